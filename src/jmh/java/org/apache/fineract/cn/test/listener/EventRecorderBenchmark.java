@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import com.google.gson.GsonBuilder;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures recording events, and recording then waiting for an event, with a backlog of
+ * unmatched events already recorded for the same tenant.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class EventRecorderBenchmark {
+
+  private static final String TENANT = "benchmark";
+  private static final int OPERATION_COUNT = 10;
+
+  @Param({"0", "1000", "100000"})
+  public int backlogSize;
+
+  private EventRecorder eventRecorder;
+  private AtomicLong payloadCounter;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    eventRecorder = new InMemoryEventRecorder(TimeUnit.SECONDS.toMillis(10),
+        new EventRetention(backlogSize + 10000, 0, 0, EvictionPolicy.LRU_PER_OPERATION),
+        new GsonBuilder().create(), NOPLogger.NOP_LOGGER);
+    payloadCounter = new AtomicLong(0);
+    for (int i = 0; i < backlogSize; i++) {
+      eventRecorder.event(TENANT, operation(i), "\"backlog" + i + "\"", String.class);
+    }
+  }
+
+  @Benchmark
+  public void record() {
+    final long i = payloadCounter.incrementAndGet();
+    eventRecorder.event(TENANT, operation(i), "\"payload" + i + "\"", String.class);
+  }
+
+  @Benchmark
+  public boolean recordThenWait() throws InterruptedException {
+    return doRecordThenWait();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean recordThenWaitFourThreads() throws InterruptedException {
+    return doRecordThenWait();
+  }
+
+  private boolean doRecordThenWait() throws InterruptedException {
+    final long i = payloadCounter.incrementAndGet();
+    final String operation = operation(i);
+    eventRecorder.event(TENANT, operation, "\"payload" + i + "\"", String.class);
+
+    TenantContextHolder.setIdentifier(TENANT);
+    try {
+      return eventRecorder.wait(operation, "payload" + i);
+    } finally {
+      TenantContextHolder.clear();
+    }
+  }
+
+  private static String operation(final long i) {
+    return "operation" + (i % OPERATION_COUNT);
+  }
+}
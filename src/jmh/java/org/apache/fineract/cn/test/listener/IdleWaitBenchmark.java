@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import com.google.gson.GsonBuilder;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.helpers.NOPLogger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the CPU a thread burns while it waits for an event which never arrives, while
+ * events for other operations of the same tenant keep being recorded.  A parked waiter
+ * should cost close to nothing, however busy the other operations are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class IdleWaitBenchmark {
+
+  private static final String TENANT = "benchmark";
+  private static final long MAX_WAIT = 20L;
+
+  @Param({"0", "1000", "10000"})
+  public int noiseEventsPerSecond;
+
+  private EventRecorder eventRecorder;
+  private Thread noiseThread;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    eventRecorder = new InMemoryEventRecorder(MAX_WAIT,
+        new EventRetention(10000, 0, 0, EvictionPolicy.FIFO),
+        new GsonBuilder().create(), NOPLogger.NOP_LOGGER);
+    if (noiseEventsPerSecond > 0) {
+      noiseThread = new Thread(this::recordNoise, "benchmark-noise");
+      noiseThread.setDaemon(true);
+      noiseThread.start();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    if (noiseThread != null) {
+      noiseThread.interrupt();
+      noiseThread.join();
+    }
+  }
+
+  /**
+   * Divide waiterCpuNanos by waits for the CPU cost of one idle wait.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class CpuTime {
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    public long waiterCpuNanos;
+    public long waits;
+
+    long currentThreadCpuTime() {
+      return threadMXBean.getCurrentThreadCpuTime();
+    }
+  }
+
+  @Benchmark
+  public boolean idleWait(final CpuTime cpuTime) throws InterruptedException {
+    final long cpuBefore = cpuTime.currentThreadCpuTime();
+    TenantContextHolder.setIdentifier(TENANT);
+    try {
+      return eventRecorder.wait("never-recorded", "nothing");
+    } finally {
+      TenantContextHolder.clear();
+      cpuTime.waiterCpuNanos += cpuTime.currentThreadCpuTime() - cpuBefore;
+      cpuTime.waits++;
+    }
+  }
+
+  private void recordNoise() {
+    final long pauseNanos = TimeUnit.SECONDS.toNanos(1) / noiseEventsPerSecond;
+    long i = 0;
+    while (!Thread.currentThread().isInterrupted()) {
+      eventRecorder.event(TENANT, "noise" + (i % 10), "\"payload" + i + "\"", String.class);
+      i++;
+      LockSupport.parkNanos(pauseNanos);
+    }
+  }
+}
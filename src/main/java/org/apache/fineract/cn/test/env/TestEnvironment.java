@@ -23,11 +23,16 @@ import org.apache.fineract.cn.lang.security.RsaKeyPairFactory;
 import org.junit.rules.ExternalResource;
 import org.springframework.util.Base64Utils;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public final class TestEnvironment extends ExternalResource {
@@ -78,6 +83,48 @@ public final class TestEnvironment extends ExternalResource {
   public static final String POSTGRESQL_PASSWORD_PROPERTY = "postgresql.password";
   public static final String POSTGRESQL_PASSWORD_DEFAULT = "postgres";
 
+  //Number of tenant databases PostgreSQLInitializer creates ahead of time.  Zero disables the pool.
+  public static final String POSTGRESQL_TENANT_POOL_SIZE_PROPERTY = "postgresql.tenantPool.size";
+  public static final String POSTGRESQL_TENANT_POOL_SIZE_DEFAULT = "0";
+
+  //Whether PostgreSQLInitializer registers the tenants it creates in the tenants table of the meta database.
+  public static final String POSTGRESQL_REGISTER_TENANTS_PROPERTY = "postgresql.registerTenants";
+  public static final String POSTGRESQL_REGISTER_TENANTS_DEFAULT = "false";
+
+  //Server settings of embedded PostgreSQL.  "fast" trades durability for speed and keeps the data directory in memory where possible.
+  public static final String POSTGRESQL_EMBEDDED_PROFILE_PROPERTY = "postgresql.embedded.profile";
+  public static final String POSTGRESQL_EMBEDDED_PROFILE_DEFAULT = "default";
+  public static final String POSTGRESQL_EMBEDDED_PROFILE_FAST = "fast";
+
+  //Directory in which CassandraInitializer keeps a snapshot of the freshly set up embedded node.  Empty disables it.
+  public static final String CASSANDRA_SNAPSHOT_DIRECTORY_PROPERTY = "cassandra.embedded.snapshotDirectory";
+  public static final String CASSANDRA_SNAPSHOT_DIRECTORY_DEFAULT = "";
+
+  //Configuration of embedded Cassandra.  "fast" trades durability for speed, see cassandra-fast.yaml.
+  public static final String CASSANDRA_EMBEDDED_PROFILE_PROPERTY = "cassandra.embedded.profile";
+  public static final String CASSANDRA_EMBEDDED_PROFILE_DEFAULT = "default";
+  public static final String CASSANDRA_EMBEDDED_PROFILE_FAST = "fast";
+
+  //Whether embedded data stores listen on free ports instead of the defaults, so that several JVMs can run side by side.
+  public static final String EMBEDDED_DYNAMIC_PORTS_PROPERTY = "embedded.dynamicPorts";
+  public static final String EMBEDDED_DYNAMIC_PORTS_DEFAULT = "false";
+
+  //Whether data store initializers boot their store in the background as soon as they are constructed.
+  public static final String EMBEDDED_WARM_UP_PROPERTY = "embedded.warmUp";
+  public static final String EMBEDDED_WARM_UP_DEFAULT = "false";
+
+  //Whether the test JVMs of a build share one data store daemon per store type, instead of each starting embedded stores.
+  public static final String EMBEDDED_SHARED_DAEMON_PROPERTY = "embedded.sharedDaemon";
+  public static final String EMBEDDED_SHARED_DAEMON_DEFAULT = "false";
+
+  //Where the shared data store daemons keep their lock, properties and log files.
+  public static final String EMBEDDED_SHARED_DAEMON_DIRECTORY_PROPERTY = "embedded.sharedDaemon.directory";
+  public static final String EMBEDDED_SHARED_DAEMON_DIRECTORY_DEFAULT = System.getProperty("java.io.tmpdir") + "/fineract-cn-test-daemon";
+
+  //Minutes a shared data store daemon waits without any attached JVM before it shuts down.
+  public static final String EMBEDDED_SHARED_DAEMON_IDLE_MINUTES_PROPERTY = "embedded.sharedDaemon.idleMinutes";
+  public static final String EMBEDDED_SHARED_DAEMON_IDLE_MINUTES_DEFAULT = "5";
+
   public static final String SPRING_CLOUD_DISCOVERY_ENABLED_PROPERTY = "spring.cloud.discovery.enabled";
   public static final String SPRING_CLOUD_DISCOVERY_ENABLED_DEFAULT = "false";
 
@@ -97,6 +144,9 @@ public final class TestEnvironment extends ExternalResource {
   public static final String RIBBON_LIST_OF_SERVERS_PROPERTY = "ribbon.listOfServers";
   public static final String RIBBON_SERVER_DEFAULT = "localhost";
 
+  //Where the data stores actually listen.  Data store initializers may publish these before populate runs.
+  private static final Set<String> PUBLISHED_PROPERTIES = ConcurrentHashMap.newKeySet();
+
   public static AutoTenantContext createRandomTenantContext()
   {
     final String randomTenantName = getRandomTenantName();
@@ -107,6 +157,30 @@ public final class TestEnvironment extends ExternalResource {
     return "cleopatra" + Math.abs(new Random().nextInt());
   }
 
+  public static boolean useDynamicPorts() {
+    return Boolean.parseBoolean(System.getProperty(EMBEDDED_DYNAMIC_PORTS_PROPERTY, EMBEDDED_DYNAMIC_PORTS_DEFAULT));
+  }
+
+  /**
+   * Sets a system property which describes a running data store, such as its port.  Unlike the
+   * defaults, it is kept when a test environment is populated later.
+   */
+  public static void publishProperty(final String key, final String value) {
+    PUBLISHED_PROPERTIES.add(key);
+    System.setProperty(key, value);
+  }
+
+  public static int findFreePort() {
+    try (final ServerSocket socket = new ServerSocket()) {
+      //Only takes effect if set before the socket is bound.
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(0));
+      return socket.getLocalPort();
+    } catch (final IOException ex) {
+      throw new IllegalStateException("Could not find a free port.", ex);
+    }
+  }
+
   public static String encodePassword(final String password) {
     return Base64Utils.encodeToString(password.getBytes());
   }
@@ -190,7 +264,17 @@ public final class TestEnvironment extends ExternalResource {
   }
 
   public void populate() {
-    System.getProperties().putAll(this.properties);
+    this.properties.forEach((key, value) -> {
+      if (!PUBLISHED_PROPERTIES.contains(key))
+        System.getProperties().put(key, value);
+    });
+  }
+
+  /**
+   * Like {@link #populate()}, but keeps every system property which is already set.
+   */
+  public void populateAbsent() {
+    this.properties.forEach(System.getProperties()::putIfAbsent);
   }
 
   public void populateProcessEnvironment(final ProcessBuilder processBuilder) {
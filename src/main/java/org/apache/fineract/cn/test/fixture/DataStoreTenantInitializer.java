@@ -18,23 +18,132 @@
  */
 package org.apache.fineract.cn.test.fixture;
 
+import org.apache.fineract.cn.test.env.TestEnvironment;
 import org.junit.rules.ExternalResource;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * @author Myrle Krantz
  */
 public abstract class DataStoreTenantInitializer extends ExternalResource {
+  private static final ExecutorService WARM_UP_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "data-store-warm-up");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private volatile CompletableFuture<Void> initialization = CompletableFuture.completedFuture(null);
+  private boolean warmUpStarted;
+
   protected abstract void initialize() throws Exception;
   protected abstract void initializeTenant(final String tenantName);
   protected abstract void finish();
 
+  /**
+   * Provisions many tenants at once, for example for load tests.  By default the tenants are
+   * initialized one after another.  Initializers which can batch the work override this.
+   */
+  protected void initializeTenants(final Collection<String> tenantNames) {
+    for (final String tenantName : tenantNames) {
+      initializeTenant(tenantName);
+    }
+  }
+
+  /**
+   * Called when a test context is done with a tenant.  By default the tenant's data store is
+   * left in place.  Initializers which pool or recycle tenant data stores override this.
+   */
+  protected void releaseTenant(final String tenantName) {
+  }
+
+  /**
+   * Called to roll back a tenant whose provisioning failed in this or another data store.  Must
+   * cope with a tenant which was only partially created, or not at all.
+   */
+  protected void dropTenant(final String tenantName) {
+  }
+
+  /**
+   * Empties all tables of an existing tenant, without dropping the tenant itself.  Does nothing
+   * by default, so data stores which don't support it keep their data between tests.
+   */
+  protected void resetTenant(final String tenantName) {
+  }
+
+  /**
+   * Makes the connection properties of the data store known, for example the port it will
+   * listen on, without booting it.  Called before a background warm-up starts, so that a Spring
+   * context which starts alongside reads the right properties.
+   */
+  protected void publishConnectionProperties() throws Exception {
+  }
+
+  /**
+   * Call at the end of the constructor.  If {@value TestEnvironment#EMBEDDED_WARM_UP_PROPERTY}
+   * is set, this starts {@link #initialize()} on a background thread, so that the data store
+   * boots while the test class and its application context start up.  Initializers then call
+   * {@link #awaitInitialization()} before they need the data store.
+   */
+  protected final void warmUpIfEnabled() {
+    if (!Boolean.parseBoolean(System.getProperty(
+        TestEnvironment.EMBEDDED_WARM_UP_PROPERTY, TestEnvironment.EMBEDDED_WARM_UP_DEFAULT)))
+      return;
+
+    try {
+      publishConnectionProperties();
+    } catch (final Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+    warmUpStarted = true;
+    initialization = CompletableFuture.runAsync(() -> {
+      try {
+        initialize();
+      } catch (final Exception ex) {
+        throw new CompletionException(ex);
+      }
+    }, WARM_UP_EXECUTOR);
+  }
+
+  /**
+   * @return completes once the data store is initialized.
+   */
+  public CompletableFuture<Void> getInitialization() {
+    return initialization;
+  }
+
+  /**
+   * Blocks until a background warm-up, if any, is done, and rethrows its failure.
+   */
+  protected void awaitInitialization() {
+    try {
+      initialization.join();
+    } catch (final CompletionException ex) {
+      throw new IllegalStateException("Initializing " + getClass().getSimpleName() + " failed.", ex.getCause());
+    }
+  }
+
   @Override
   protected void before() throws Exception {
+    if (warmUpStarted) {
+      //Already booting in the background, tenant setup waits for it.
+      warmUpStarted = false;
+      return;
+    }
     initialize();
   }
 
   @Override
   protected void after() {
+    try {
+      initialization.join();
+    } catch (final CompletionException ignored) {
+      //Reported to whoever needed the data store, finish cleans up what was started.
+    }
     finish();
   }
 }
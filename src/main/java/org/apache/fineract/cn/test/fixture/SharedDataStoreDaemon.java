@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture;
+
+import org.apache.fineract.cn.test.env.TestEnvironment;
+import org.apache.fineract.cn.test.fixture.cassandra.CassandraInitializer;
+import org.apache.fineract.cn.test.fixture.postgresql.PostgreSQLInitializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A data store process shared by all test JVMs of a build, so that parallel forks don't each
+ * start their own embedded PostgreSQL or Cassandra.  Enable it with the system property
+ * {@value TestEnvironment#EMBEDDED_SHARED_DAEMON_PROPERTY}.
+ *
+ * The first JVM to attach starts the daemon while it holds a lock file, and the daemon writes
+ * the connection properties of its store to a properties file once the store is set up.  Later
+ * JVMs find that file, check that the store still answers, and attach to it.  Attached JVMs
+ * touch a heartbeat file, and the daemon exits once no heartbeat was seen for a while.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SharedDataStoreDaemon {
+
+  public enum Store {
+    POSTGRESQL(TestEnvironment.POSTGRESQL_HOST_PROPERTY, TestEnvironment.POSTGRESQL_PORT_PROPERTY),
+    CASSANDRA(TestEnvironment.CASSANDRA_CONTACT_POINTS_PROPERTY);
+
+    private final String[] publishedProperties;
+
+    Store(final String... publishedProperties) {
+      this.publishedProperties = publishedProperties;
+    }
+
+    private String address() {
+      if (this == POSTGRESQL)
+        return System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY) + ":"
+            + System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY);
+      //The first contact point is the embedded node.
+      return System.getProperty(TestEnvironment.CASSANDRA_CONTACT_POINTS_PROPERTY).split(",")[0];
+    }
+
+    private void start() throws Exception {
+      if (this == POSTGRESQL)
+        PostgreSQLInitializer.setup();
+      else
+        new CassandraInitializer().initialize();
+    }
+  }
+
+  private static final String LOCK_FILE = "daemon.lock";
+  private static final String PROPERTIES_FILE = "daemon.properties";
+  private static final String LOG_FILE = "daemon.log";
+  private static final String HEARTBEAT_DIRECTORY = "heartbeats";
+  private static final String ADDRESS_KEY = "daemon.address";
+  private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2L);
+  private static final long HEARTBEAT_PERIOD_SECONDS = 30L;
+  private static final String[] FORWARDED_PROPERTY_PREFIXES = {"postgresql.", "cassandra.", "embedded."};
+
+  private static final Set<Store> attachedStores = EnumSet.noneOf(Store.class);
+  private static ScheduledExecutorService heartbeatExecutor;
+
+  private SharedDataStoreDaemon() {
+  }
+
+  public static boolean isEnabled() {
+    return Boolean.parseBoolean(System.getProperty(
+        TestEnvironment.EMBEDDED_SHARED_DAEMON_PROPERTY, TestEnvironment.EMBEDDED_SHARED_DAEMON_DEFAULT));
+  }
+
+  /**
+   * Attaches this JVM to the daemon of the given store, starting it first if no live daemon is
+   * found, and publishes the store's connection properties as system properties.
+   */
+  public static synchronized void attach(final Store store) throws Exception {
+    final Path storeDirectory = storeDirectory(store);
+    Files.createDirectories(storeDirectory.resolve(HEARTBEAT_DIRECTORY));
+
+    final Properties daemonProperties;
+    try (final FileChannel lockChannel = FileChannel.open(storeDirectory.resolve(LOCK_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      final FileLock lock = lockChannel.lock();
+      try {
+        //Beat before looking, so that a daemon which is about to go idle stays up for this JVM.
+        heartbeat(store);
+        final Properties liveDaemonProperties = readLiveDaemonProperties(storeDirectory);
+        daemonProperties = (liveDaemonProperties != null) ? liveDaemonProperties : spawn(store, storeDirectory);
+      } finally {
+        lock.release();
+      }
+    }
+
+    for (final String property : store.publishedProperties) {
+      TestEnvironment.publishProperty(property, daemonProperties.getProperty(property));
+    }
+    if (attachedStores.add(store))
+      startHeartbeats();
+  }
+
+  /**
+   * Runs the daemon of one store: {@code SharedDataStoreDaemon <store> <directory>}.
+   */
+  public static void main(final String[] args) throws Exception {
+    final Store store = Store.valueOf(args[0]);
+    final Path storeDirectory = Paths.get(args[1]);
+
+    //The properties forwarded by the fork which spawned the daemon take precedence over the defaults.
+    new TestEnvironment("shared-data-store-daemon").populateAbsent();
+    System.setProperty(TestEnvironment.EMBEDDED_SHARED_DAEMON_PROPERTY, "false");
+    //The store is started right below, a warm-up would start it a second time.
+    System.setProperty(TestEnvironment.EMBEDDED_WARM_UP_PROPERTY, "false");
+    System.setProperty(TestEnvironment.EMBEDDED_DYNAMIC_PORTS_PROPERTY, "true");
+    store.start();
+
+    final Path propertiesFile = storeDirectory.resolve(PROPERTIES_FILE);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        Files.deleteIfExists(propertiesFile);
+      } catch (final IOException ex) {
+        ex.printStackTrace();
+      }
+    }, "shared-data-store-daemon-shutdown"));
+
+    final Properties daemonProperties = new Properties();
+    for (final String property : store.publishedProperties) {
+      daemonProperties.setProperty(property, System.getProperty(property));
+    }
+    daemonProperties.setProperty(ADDRESS_KEY, store.address());
+    final Path partialPropertiesFile = storeDirectory.resolve(PROPERTIES_FILE + ".partial");
+    try (final OutputStream out = Files.newOutputStream(partialPropertiesFile)) {
+      daemonProperties.store(out, store + " data store daemon");
+    }
+    Files.move(partialPropertiesFile, propertiesFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+    final long idleMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(System.getProperty(
+        TestEnvironment.EMBEDDED_SHARED_DAEMON_IDLE_MINUTES_PROPERTY,
+        TestEnvironment.EMBEDDED_SHARED_DAEMON_IDLE_MINUTES_DEFAULT)));
+    final Path heartbeatDirectory = storeDirectory.resolve(HEARTBEAT_DIRECTORY);
+    while (System.currentTimeMillis() - lastHeartbeatMillis(heartbeatDirectory) < idleMillis) {
+      TimeUnit.SECONDS.sleep(HEARTBEAT_PERIOD_SECONDS);
+    }
+    System.exit(0);
+  }
+
+  private static Path storeDirectory(final Store store) {
+    return Paths.get(System.getProperty(
+        TestEnvironment.EMBEDDED_SHARED_DAEMON_DIRECTORY_PROPERTY,
+        TestEnvironment.EMBEDDED_SHARED_DAEMON_DIRECTORY_DEFAULT), store.name().toLowerCase());
+  }
+
+  private static Properties readLiveDaemonProperties(final Path storeDirectory) throws IOException {
+    final Path propertiesFile = storeDirectory.resolve(PROPERTIES_FILE);
+    if (!Files.isRegularFile(propertiesFile))
+      return null;
+
+    final Properties daemonProperties = new Properties();
+    try (final InputStream in = Files.newInputStream(propertiesFile)) {
+      daemonProperties.load(in);
+    }
+    return isReachable(daemonProperties.getProperty(ADDRESS_KEY)) ? daemonProperties : null;
+  }
+
+  private static boolean isReachable(final String address) {
+    if (address == null)
+      return false;
+
+    final int separator = address.lastIndexOf(':');
+    try (final Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(address.substring(0, separator),
+          Integer.parseInt(address.substring(separator + 1))), 1000);
+      return true;
+    } catch (final IOException | RuntimeException ex) {
+      return false;
+    }
+  }
+
+  private static Properties spawn(final Store store, final Path storeDirectory) throws Exception {
+    final Path propertiesFile = storeDirectory.resolve(PROPERTIES_FILE);
+    Files.deleteIfExists(propertiesFile);
+
+    final List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    for (final Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+      final String key = property.getKey().toString();
+      if (Stream.of(FORWARDED_PROPERTY_PREFIXES).anyMatch(key::startsWith))
+        command.add("-D" + key + "=" + property.getValue());
+    }
+    command.add("-cp");
+    command.add(classPath());
+    command.add(SharedDataStoreDaemon.class.getName());
+    command.add(store.name());
+    command.add(storeDirectory.toString());
+    new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(storeDirectory.resolve(LOG_FILE).toFile())
+        .start();
+
+    final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      final Properties daemonProperties = readLiveDaemonProperties(storeDirectory);
+      if (daemonProperties != null)
+        return daemonProperties;
+      TimeUnit.MILLISECONDS.sleep(200L);
+    }
+    throw new IllegalStateException("Shared " + store + " daemon did not start within "
+        + STARTUP_TIMEOUT_MILLIS + " ms, see " + storeDirectory.resolve(LOG_FILE) + ".");
+  }
+
+  private static String classPath() {
+    //Test runners may load the test classpath into a class loader of their own.
+    final ClassLoader classLoader = SharedDataStoreDaemon.class.getClassLoader();
+    if (classLoader instanceof URLClassLoader)
+      return Stream.of(((URLClassLoader) classLoader).getURLs())
+          .map(URL::getPath)
+          .collect(Collectors.joining(File.pathSeparator));
+    return System.getProperty("java.class.path");
+  }
+
+  private static synchronized void startHeartbeats() {
+    if (heartbeatExecutor != null)
+      return;
+
+    heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "shared-data-store-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    heartbeatExecutor.scheduleAtFixedRate(() -> {
+      synchronized (SharedDataStoreDaemon.class) {
+        attachedStores.forEach(SharedDataStoreDaemon::heartbeat);
+      }
+    }, HEARTBEAT_PERIOD_SECONDS, HEARTBEAT_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private static void heartbeat(final Store store) {
+    final String jvmName = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9]", "_");
+    final Path heartbeatFile = storeDirectory(store).resolve(HEARTBEAT_DIRECTORY).resolve(jvmName);
+    try {
+      if (!Files.exists(heartbeatFile))
+        Files.createFile(heartbeatFile);
+      Files.setLastModifiedTime(heartbeatFile, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (final IOException ex) {
+      ex.printStackTrace();
+    }
+  }
+
+  private static long lastHeartbeatMillis(final Path heartbeatDirectory) throws IOException {
+    try (final Stream<Path> heartbeatFiles = Files.list(heartbeatDirectory)) {
+      return heartbeatFiles
+          .mapToLong(heartbeatFile -> heartbeatFile.toFile().lastModified())
+          .max()
+          .orElse(0L);
+    }
+  }
+}
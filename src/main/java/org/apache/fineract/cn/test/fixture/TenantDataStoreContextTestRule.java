@@ -20,6 +20,7 @@ package org.apache.fineract.cn.test.fixture;
 
 import org.apache.fineract.cn.test.env.TestEnvironment;
 import org.junit.rules.ExternalResource;
+import org.junit.rules.TestRule;
 import org.springframework.util.Assert;
 
 import javax.annotation.Nullable;
@@ -105,4 +106,26 @@ public class TenantDataStoreContextTestRule extends ExternalResource {
   public String getTenantName() {
     return tenantName;
   }
+
+  /**
+   * Use the returned rule as a @Rule next to this @ClassRule to empty the tenant's tables after
+   * each test, instead of provisioning a new tenant for each test.
+   *
+   * Example:
+   * <pre>
+   * {@code
+   * @literal @Rule
+   *     public final TestRule resetTenant = tenantDataStoreContext.resetAfterEachTest();
+   * }
+   * </pre>
+   */
+  public TestRule resetAfterEachTest() {
+    return new ExternalResource() {
+      @Override
+      protected void after() {
+        Assert.notNull(tenantDataStoreTestContext);
+        tenantDataStoreTestContext.reset();
+      }
+    };
+  }
 }
\ No newline at end of file
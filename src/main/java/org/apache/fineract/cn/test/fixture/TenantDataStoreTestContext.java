@@ -21,19 +21,125 @@ package org.apache.fineract.cn.test.fixture;
 import org.apache.fineract.cn.test.env.TestEnvironment;
 import org.apache.fineract.cn.lang.AutoTenantContext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
 /**
  * @author Myrle Krantz
  */
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class TenantDataStoreTestContext implements AutoCloseable {
+  private static final ExecutorService PROVISIONING_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "tenant-provisioning");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final String tenantName;
+  private final DataStoreTenantInitializer[] dataStoreTenantInitializers;
   private final AutoTenantContext autoTenantContext;
 
   private TenantDataStoreTestContext(final String tenantName, final DataStoreTenantInitializer[] dataStoreTenantInitializers) {
+    this.tenantName = tenantName;
+    this.dataStoreTenantInitializers = dataStoreTenantInitializers;
     this.autoTenantContext = new AutoTenantContext(tenantName);
+    try {
+      initializeTenant(tenantName, dataStoreTenantInitializers);
+    } catch (final RuntimeException ex) {
+      autoTenantContext.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Provisions the tenant in all data stores at once, so that it takes as long as the slowest
+   * store rather than the sum of them.  If any store fails, the tenant is dropped again from the
+   * stores which did provision it, and the failures are thrown together.  A store which fails
+   * cleans up after itself, and never drops a tenant it could not lease from another test JVM.
+   */
+  private static void initializeTenant(final String tenantName, final DataStoreTenantInitializer[] dataStoreTenantInitializers) {
+    final Throwable[] results = runConcurrently(tenantName, dataStoreTenantInitializers, DataStoreTenantInitializer::initializeTenant);
+    final List<Throwable> failures = failures(results);
+    if (failures.isEmpty())
+      return;
+
+    for (int i = 0; i < dataStoreTenantInitializers.length; i++)
+    {
+      if (results[i] != null)
+        continue;
+      try {
+        dataStoreTenantInitializers[i].dropTenant(tenantName);
+      } catch (final RuntimeException ex) {
+        failures.add(ex);
+      }
+    }
+    final IllegalStateException provisioningFailure = new IllegalStateException(
+        "Provisioning tenant " + tenantName + " failed in " + failures.size() + " data store operation(s).",
+        failures.get(0));
+    failures.stream().skip(1).forEach(provisioningFailure::addSuppressed);
+    throw provisioningFailure;
+  }
+
+  /**
+   * Runs the operation for every data store, each on its own thread unless there is only one.
+   *
+   * @return the failure of each data store's operation, or null where it succeeded.
+   */
+  private static Throwable[] runConcurrently(
+      final String tenantName,
+      final DataStoreTenantInitializer[] dataStoreTenantInitializers,
+      final BiConsumer<DataStoreTenantInitializer, String> operation) {
+    final Throwable[] results = new Throwable[dataStoreTenantInitializers.length];
+    if (dataStoreTenantInitializers.length == 1) {
+      //The tenant context of this thread is already set.
+      try {
+        operation.accept(dataStoreTenantInitializers[0], tenantName);
+      } catch (final RuntimeException ex) {
+        results[0] = ex;
+      }
+      return results;
+    }
+
+    final List<Future<?>> executions = new ArrayList<>(dataStoreTenantInitializers.length);
     for (final DataStoreTenantInitializer dataStoreTenantInitializer : dataStoreTenantInitializers)
     {
-      dataStoreTenantInitializer.initializeTenant(tenantName);
+      executions.add(PROVISIONING_EXECUTOR.submit(() -> {
+        final AutoTenantContext tenantContext = new AutoTenantContext(tenantName);
+        try {
+          operation.accept(dataStoreTenantInitializer, tenantName);
+        } finally {
+          tenantContext.close();
+        }
+      }));
     }
+
+    for (int i = 0; i < executions.size(); i++)
+    {
+      try {
+        executions.get(i).get();
+      } catch (final ExecutionException ex) {
+        results[i] = ex.getCause();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        results[i] = ex;
+      }
+    }
+    return results;
+  }
+
+  private static List<Throwable> failures(final Throwable[] results) {
+    final List<Throwable> failures = new ArrayList<>();
+    for (final Throwable result : results)
+    {
+      if (result != null)
+        failures.add(result);
+    }
+    return failures;
   }
 
   public static TenantDataStoreTestContext forDefinedTenantName(final String tenantName, final DataStoreTenantInitializer... dataStoreTenantInitializers)
@@ -46,8 +152,29 @@ public class TenantDataStoreTestContext implements AutoCloseable {
     return new TenantDataStoreTestContext(TestEnvironment.getRandomTenantName(), dataStoreTenantInitializers);
   }
 
+  /**
+   * Empties all of the tenant's tables in all data stores, keeping the tenant itself.  Much
+   * cheaper than provisioning a new tenant, so it can isolate single tests from each other.
+   */
+  public void reset() {
+    final List<Throwable> failures = failures(
+        runConcurrently(tenantName, dataStoreTenantInitializers, DataStoreTenantInitializer::resetTenant));
+    if (failures.isEmpty())
+      return;
+
+    final IllegalStateException resetFailure = new IllegalStateException(
+        "Resetting tenant " + tenantName + " failed in " + failures.size() + " data store(s).",
+        failures.get(0));
+    failures.stream().skip(1).forEach(resetFailure::addSuppressed);
+    throw resetFailure;
+  }
+
   @Override
   public void close()  {
     autoTenantContext.close();
+    for (final DataStoreTenantInitializer dataStoreTenantInitializer : dataStoreTenantInitializers)
+    {
+      dataStoreTenantInitializer.releaseTenant(tenantName);
+    }
   }
 }
\ No newline at end of file
@@ -20,71 +20,186 @@ package org.apache.fineract.cn.test.fixture.cassandra;
 
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.schemabuilder.Create;
 import com.datastax.driver.core.schemabuilder.SchemaBuilder;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import org.apache.fineract.cn.test.env.TestEnvironment;
 import org.apache.fineract.cn.test.fixture.DataStoreTenantInitializer;
+import org.apache.fineract.cn.test.fixture.SharedDataStoreDaemon;
 import org.apache.fineract.cn.cassandra.util.ContactPointUtils;
 import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public final class CassandraInitializer extends DataStoreTenantInitializer {
 
+  //Bounds the schema changes in flight, so that a large batch doesn't swamp the embedded node.
+  private static final int MAX_CONCURRENT_TENANT_CREATIONS = 8;
+  private static final long EMBEDDED_CASSANDRA_STARTUP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+  private static final long SCHEMA_AGREEMENT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+
   private final boolean useExistingDB;
+  private EmbeddedCassandraConfig embeddedCassandraConfig;
+  //Whether this JVM runs its own embedded node, rather than using an existing or shared one.
+  private boolean embedded;
   private Cluster cluster;
+  private Session session;
+  //Prepares the tenants insert on first use and binds it for every tenant after that.
+  private Mapper<CassandraTenant> cassandraTenantMapper;
 
   public CassandraInitializer() {
     this(false);
   }
   public CassandraInitializer(boolean useExistingDB) {
     super();this.useExistingDB = useExistingDB;
+    warmUpIfEnabled();
+  }
+
+  @Override
+  protected synchronized void publishConnectionProperties() throws Exception {
+    embedded = !useExistingDB && !SharedDataStoreDaemon.isEnabled();
+    if (!useExistingDB && !embedded)
+      //The daemon has set up the meta keyspace already.
+      SharedDataStoreDaemon.attach(SharedDataStoreDaemon.Store.CASSANDRA);
+    if (embedded) {
+      //Ports are chosen before the cluster is built, since it reads the published contact points.
+      embeddedCassandraConfig = EmbeddedCassandraConfig.get();
+      embeddedCassandraConfig.publish();
+    }
   }
 
   @Override
   public void initialize() throws Exception {
+    publishConnectionProperties();
     final Cluster.Builder clusterBuilder = new Cluster.Builder()
         .withClusterName(System.getProperty(TestEnvironment.CASSANDRA_CLUSTER_NAME_PROPERTY));
     ContactPointUtils.process(clusterBuilder, System.getProperty(TestEnvironment.CASSANDRA_CONTACT_POINTS_PROPERTY));
+    if (!useExistingDB)
+      //No wait after each DDL statement, awaitSchemaAgreement waits once per tenant or batch instead.
+      clusterBuilder.withMaxSchemaAgreementWaitSeconds(0);
     cluster = clusterBuilder.build();
     setup();
+    session = cluster.connect(System.getProperty(TestEnvironment.CASSANDRA_META_KEYSPACE_PROPERTY));
+    cassandraTenantMapper = new MappingManager(session).mapper(CassandraTenant.class);
   }
 
   @Override
   public void initializeTenant(final String tenantName) {
+    awaitInitialization();
     createKeyspaceTenant(tenantName);
   }
 
+  /**
+   * Creates the tenants concurrently, each as a pipeline of asynchronous keyspace, table and
+   * tenants row writes, and waits for schema agreement once at the end.
+   */
+  @Override
+  public void initializeTenants(final Collection<String> tenantNames) {
+    awaitInitialization();
+    createKeyspacesTenants(tenantNames);
+  }
+
+  /**
+   * Truncates all tables of the tenant keyspace, such as command_source, concurrently.
+   */
+  @Override
+  protected void resetTenant(final String tenantName) {
+    awaitInitialization();
+    final KeyspaceMetadata keyspace = cluster.getMetadata().getKeyspace(tenantName);
+    if (keyspace == null)
+      throw new IllegalStateException("Could not reset tenant " + tenantName + ", it has no keyspace.");
+
+    final List<CompletableFuture<ResultSet>> truncations = new ArrayList<>();
+    for (final TableMetadata table : keyspace.getTables()) {
+      truncations.add(executeAsync(session, QueryBuilder.truncate(keyspace.getName(), table.getName())));
+    }
+    join(CompletableFuture.allOf(truncations.toArray(new CompletableFuture<?>[0])));
+  }
+
+  @Override
+  protected void dropTenant(final String tenantName) {
+    session.execute(SchemaBuilder.dropKeyspace(tenantName).ifExists().buildInternal());
+    session.execute(QueryBuilder
+        .delete()
+        .from(System.getProperty(TestEnvironment.CASSANDRA_META_KEYSPACE_PROPERTY), "tenants")
+        .where(QueryBuilder.eq("identifier", tenantName)));
+  }
+
   @Override
   public void finish() {
+    //A node restored from a snapshot is not known to cassandra-unit, so the tenants are dropped here instead.
+    if (embedded && session != null && EmbeddedCassandraSnapshot.isRestoredNodeRunning())
+      dropTenantKeyspaces();
+    if (session != null) {
+      session.close();
+      session = null;
+    }
     if (cluster != null)
       cluster.close();
 
-    if (!useExistingDB) this.tearDown();
+    if (embedded) this.tearDown();
   }
 
   private void setup() throws Exception {
-    if (!useExistingDB) {
-      startEmbeddedCassandra();
+    if (embedded) {
+      final String snapshotDirectory = System.getProperty(
+          TestEnvironment.CASSANDRA_SNAPSHOT_DIRECTORY_PROPERTY, TestEnvironment.CASSANDRA_SNAPSHOT_DIRECTORY_DEFAULT);
+      if (!snapshotDirectory.isEmpty()
+          && EmbeddedCassandraSnapshot.restore(snapshotDirectory, embeddedCassandraConfig, EMBEDDED_CASSANDRA_STARTUP_TIMEOUT_MILLIS))
+        return;
+
+      if (!EmbeddedCassandraSnapshot.isRestoredNodeRunning())
+        startEmbeddedCassandra();
       createKeyspaceSeshat();
+      if (!snapshotDirectory.isEmpty())
+        EmbeddedCassandraSnapshot.takeIfAbsent(snapshotDirectory, embeddedCassandraConfig);
     }
   }
 
+  /**
+   * Drops every keyspace but the system and meta keyspaces, and empties the meta keyspace's
+   * tenants table, which leaves the node as it was restored.
+   */
+  private void dropTenantKeyspaces() {
+    final String metaKeyspace = System.getProperty(TestEnvironment.CASSANDRA_META_KEYSPACE_PROPERTY);
+    for (final KeyspaceMetadata keyspace : cluster.getMetadata().getKeyspaces()) {
+      final String name = keyspace.getName();
+      if (!name.startsWith("system") && !name.equals(metaKeyspace))
+        session.execute(SchemaBuilder.dropKeyspace(name).ifExists().buildInternal());
+    }
+    session.execute(QueryBuilder.truncate(metaKeyspace, "tenants"));
+  }
+
   private void tearDown() {
-    EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
+    //A node restored from a snapshot keeps running, see dropTenantKeyspaces.
+    if (!EmbeddedCassandraSnapshot.isRestoredNodeRunning())
+      EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
   }
 
   private void startEmbeddedCassandra() throws Exception {
-    EmbeddedCassandraServerHelper.startEmbeddedCassandra(TimeUnit.SECONDS.toMillis(30L));
+    embeddedCassandraConfig.startEmbeddedCassandra(EMBEDDED_CASSANDRA_STARTUP_TIMEOUT_MILLIS);
   }
 
   private void createKeyspaceSeshat() {
     try (final Session session = cluster.connect()) {
       // create meta keyspace seshat
-      session.execute("CREATE KEYSPACE " +
+      session.execute("CREATE KEYSPACE IF NOT EXISTS " +
           System.getProperty(TestEnvironment.CASSANDRA_META_KEYSPACE_PROPERTY) +
           " WITH REPLICATION = {'class': 'SimpleStrategy', 'replication_factor': 1}");
       // create needed tenant management table
@@ -98,40 +213,171 @@ public final class CassandraInitializer extends DataStoreTenantInitializer {
           .addColumn("replicas", DataType.text())
           .addColumn("name", DataType.text())
           .addColumn("description", DataType.text())
+          .ifNotExists()
           .buildInternal();
       session.execute(createTenantsTable);
     }
   }
 
   private void createKeyspaceTenant(final String identifier) {
-    try (final Session session = cluster.connect()) {
-      // create tenant keyspace
-      session.execute("CREATE KEYSPACE " + identifier
-          + " WITH REPLICATION = {'class': 'SimpleStrategy', 'replication_factor': 1}");
-      // create needed command source table for the new tenant
-      final String createCommandSourceTable = SchemaBuilder.createTable(identifier, "command_source")
-          .addPartitionKey("source", DataType.text())
-          .addPartitionKey("bucket", DataType.text())
-          .addClusteringColumn("created_on", DataType.timestamp())
-          .addColumn("command", DataType.text())
-          .addColumn("processed", DataType.cboolean())
-          .addColumn("failed", DataType.cboolean())
-          .addColumn("failure_message", DataType.text())
-          .buildInternal();
-      session.execute(createCommandSourceTable);
-      // insert tenant connection info in management table
-      session.execute("USE " + System.getProperty(TestEnvironment.CASSANDRA_META_KEYSPACE_PROPERTY));
-      final MappingManager mappingManager = new MappingManager(session);
-      final CassandraTenant cassandraTenant = new CassandraTenant();
-      cassandraTenant.setIdentifier(identifier);
-      cassandraTenant.setClusterName(System.getProperty(TestEnvironment.CASSANDRA_CLUSTER_NAME_PROPERTY));
-      cassandraTenant.setContactPoints(System.getProperty(TestEnvironment.CASSANDRA_CONTACT_POINTS_PROPERTY));
-      cassandraTenant.setKeyspaceName(identifier);
-      cassandraTenant.setReplicationType("Simple");
-      cassandraTenant.setReplicas("1");
-      cassandraTenant.setName(identifier);
-      final Mapper<CassandraTenant> cassandraTenantMapper = mappingManager.mapper(CassandraTenant.class);
-      cassandraTenantMapper.save(cassandraTenant);
+    //Throws before creating anything if another test JVM holds the name.
+    final CompletableFuture<Void> tenantCreation = createTenantAsync(identifier);
+    try {
+      join(tenantCreation);
+    } catch (final RuntimeException ex) {
+      try {
+        dropTenant(identifier);
+      } catch (final RuntimeException dropFailure) {
+        ex.addSuppressed(dropFailure);
+      }
+      throw ex;
     }
+    awaitSchemaAgreement();
+  }
+
+  private void createKeyspacesTenants(final Collection<String> identifiers) {
+    final Semaphore inFlight = new Semaphore(MAX_CONCURRENT_TENANT_CREATIONS);
+    final List<String> started = new ArrayList<>(identifiers.size());
+    final List<CompletableFuture<Void>> tenantCreations = new ArrayList<>(identifiers.size());
+    try {
+      for (final String identifier : identifiers) {
+        inFlight.acquireUninterruptibly();
+        final CompletableFuture<Void> tenantCreation;
+        try {
+          //Throws before creating anything if another test JVM holds the name.
+          tenantCreation = createTenantAsync(identifier);
+        } catch (final RuntimeException ex) {
+          inFlight.release();
+          throw ex;
+        }
+        tenantCreation.whenComplete((result, ex) -> inFlight.release());
+        started.add(identifier);
+        tenantCreations.add(tenantCreation);
+      }
+      join(CompletableFuture.allOf(tenantCreations.toArray(new CompletableFuture<?>[0])));
+    } catch (final RuntimeException ex) {
+      //Let the creations still in flight finish, so that dropping them is not raced.
+      for (final CompletableFuture<Void> tenantCreation : tenantCreations) {
+        try {
+          tenantCreation.join();
+        } catch (final CompletionException ignored) {
+          //Dropped below like the others.
+        }
+      }
+      for (final String identifier : started) {
+        try {
+          dropTenant(identifier);
+        } catch (final RuntimeException dropFailure) {
+          ex.addSuppressed(dropFailure);
+        }
+      }
+      throw ex;
+    }
+    awaitSchemaAgreement();
+  }
+
+  private CompletableFuture<Void> createTenantAsync(final String identifier) {
+    if (!useExistingDB && !embedded)
+      leaseTenant(identifier);
+    // create tenant keyspace, then the command source table in it
+    final CompletableFuture<ResultSet> commandSourceTableCreation =
+        executeAsync(session, createTenantKeyspaceStatement(identifier))
+            .thenCompose(keyspaceCreated -> executeAsync(session, createCommandSourceTableStatement(identifier, !useExistingDB)));
+    // insert tenant connection info in management table, which doesn't need to wait for the keyspace
+    final CompletableFuture<ResultSet> tenantInsertion =
+        executeAsync(session, cassandraTenantMapper.saveQuery(newCassandraTenant(identifier)));
+    return CompletableFuture.allOf(commandSourceTableCreation, tenantInsertion);
+  }
+
+  /**
+   * Claims a tenant name on a node shared with other test JVMs with a conditional insert of its
+   * row into the tenants table, so that only one JVM gets the name.
+   */
+  private void leaseTenant(final String identifier) {
+    final ResultSet lease = session.execute(QueryBuilder
+        .insertInto(System.getProperty(TestEnvironment.CASSANDRA_META_KEYSPACE_PROPERTY), "tenants")
+        .value("identifier", identifier)
+        .ifNotExists());
+    if (!lease.wasApplied())
+      throw new IllegalStateException("Tenant " + identifier + " is leased by another test JVM.");
+  }
+
+  private static CompletableFuture<ResultSet> executeAsync(final Session session, final String statement) {
+    return executeAsync(session, new SimpleStatement(statement));
+  }
+
+  private static CompletableFuture<ResultSet> executeAsync(final Session session, final Statement statement) {
+    final ResultSetFuture resultSetFuture = session.executeAsync(statement);
+    final CompletableFuture<ResultSet> result = new CompletableFuture<>();
+    //Runs on the driver's I/O thread, so whatever is chained here must not block.
+    resultSetFuture.addListener(() -> {
+      try {
+        result.complete(resultSetFuture.getUninterruptibly());
+      } catch (final RuntimeException ex) {
+        result.completeExceptionally(ex);
+      }
+    }, Runnable::run);
+    return result;
+  }
+
+  private static void join(final CompletableFuture<?> future) {
+    try {
+      future.join();
+    } catch (final CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ex.getCause();
+      throw ex;
+    }
+  }
+
+  private void awaitSchemaAgreement() {
+    final long deadline = System.currentTimeMillis() + SCHEMA_AGREEMENT_TIMEOUT_MILLIS;
+    while (!cluster.getMetadata().checkSchemaAgreement()) {
+      if (System.currentTimeMillis() > deadline)
+        throw new IllegalStateException("Cassandra nodes did not agree on the schema within "
+            + SCHEMA_AGREEMENT_TIMEOUT_MILLIS + " ms.");
+      try {
+        TimeUnit.MILLISECONDS.sleep(100L);
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+
+  private static String createTenantKeyspaceStatement(final String identifier) {
+    return "CREATE KEYSPACE " + identifier
+        + " WITH REPLICATION = {'class': 'SimpleStrategy', 'replication_factor': 1}";
+  }
+
+  private static String createCommandSourceTableStatement(final String identifier, final boolean embeddedNode) {
+    final Create createCommandSourceTable = SchemaBuilder.createTable(identifier, "command_source")
+        .addPartitionKey("source", DataType.text())
+        .addPartitionKey("bucket", DataType.text())
+        .addClusteringColumn("created_on", DataType.timestamp())
+        .addColumn("command", DataType.text())
+        .addColumn("processed", DataType.cboolean())
+        .addColumn("failed", DataType.cboolean())
+        .addColumn("failure_message", DataType.text());
+    if (!embeddedNode || !EmbeddedCassandraConfig.useFastProfile())
+      return createCommandSourceTable.buildInternal();
+
+    //A test tenant lives too briefly for compaction to pay off, and few reads go through its bloom filters.
+    return createCommandSourceTable.withOptions()
+        .compactionOptions(SchemaBuilder.sizedTieredStategy().enabled(false))
+        .bloomFilterFPChance(0.1)
+        .buildInternal();
+  }
+
+  private static CassandraTenant newCassandraTenant(final String identifier) {
+    final CassandraTenant cassandraTenant = new CassandraTenant();
+    cassandraTenant.setIdentifier(identifier);
+    cassandraTenant.setClusterName(System.getProperty(TestEnvironment.CASSANDRA_CLUSTER_NAME_PROPERTY));
+    cassandraTenant.setContactPoints(System.getProperty(TestEnvironment.CASSANDRA_CONTACT_POINTS_PROPERTY));
+    cassandraTenant.setKeyspaceName(identifier);
+    cassandraTenant.setReplicationType("Simple");
+    cassandraTenant.setReplicas("1");
+    cassandraTenant.setName(identifier);
+    return cassandraTenant;
   }
 }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.cassandra;
+
+import org.apache.fineract.cn.test.env.TestEnvironment;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Where the embedded Cassandra node of this JVM keeps its files, and on which port it serves
+ * clients.  With dynamic ports, every JVM gets its own directory and free ports, written into
+ * its own copy of the cassandra-unit configuration, so that parallel test forks don't collide.
+ * With the fast profile, the node is configured from cassandra-fast.yaml instead.
+ */
+final class EmbeddedCassandraConfig {
+
+  private static final String DEFAULT_NATIVE_TRANSPORT_PORT = "9142";
+  private static final String FAST_PROFILE_YML_FILE = "cassandra-fast.yaml";
+  private static final String[] PORT_KEYS = {"native_transport_port", "rpc_port", "storage_port", "ssl_storage_port"};
+
+  private static EmbeddedCassandraConfig instance;
+
+  private final boolean dynamicPorts;
+  private final boolean fastProfile;
+  private final Path directory;
+  private final Path yamlFile;
+  private final String yaml;
+  private final String contactPoints;
+
+  private EmbeddedCassandraConfig(
+      final boolean dynamicPorts,
+      final boolean fastProfile,
+      final Path directory,
+      final String yaml,
+      final String contactPoints) {
+    this.dynamicPorts = dynamicPorts;
+    this.fastProfile = fastProfile;
+    this.directory = directory;
+    this.yamlFile = directory.resolve(EmbeddedCassandraServerHelper.DEFAULT_CASSANDRA_YML_FILE);
+    this.yaml = yaml;
+    this.contactPoints = contactPoints;
+  }
+
+  static synchronized EmbeddedCassandraConfig get() throws IOException {
+    if (instance == null)
+      instance = TestEnvironment.useDynamicPorts() ? withDynamicPorts() : withDefaultPorts();
+    return instance;
+  }
+
+  static boolean useFastProfile() {
+    return TestEnvironment.CASSANDRA_EMBEDDED_PROFILE_FAST.equals(System.getProperty(
+        TestEnvironment.CASSANDRA_EMBEDDED_PROFILE_PROPERTY, TestEnvironment.CASSANDRA_EMBEDDED_PROFILE_DEFAULT));
+  }
+
+  private static EmbeddedCassandraConfig withDefaultPorts() throws IOException {
+    return new EmbeddedCassandraConfig(false, useFastProfile(), Paths.get(EmbeddedCassandraServerHelper.DEFAULT_TMP_DIR),
+        readYaml(), "127.0.0.1:" + DEFAULT_NATIVE_TRANSPORT_PORT);
+  }
+
+  private static EmbeddedCassandraConfig withDynamicPorts() throws IOException {
+    //The JVM name is pid@host, unique among the forks of one build.
+    final String jvmName = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9]", "_");
+    final String directoryName = EmbeddedCassandraServerHelper.DEFAULT_TMP_DIR + "-" + jvmName;
+    String yaml = readYaml().replace(EmbeddedCassandraServerHelper.DEFAULT_TMP_DIR, directoryName);
+    int nativeTransportPort = 0;
+    for (final String portKey : PORT_KEYS) {
+      final int port = TestEnvironment.findFreePort();
+      yaml = setPort(yaml, portKey, port);
+      if (portKey.equals("native_transport_port"))
+        nativeTransportPort = port;
+    }
+    return new EmbeddedCassandraConfig(true, useFastProfile(), Paths.get(directoryName), yaml, "127.0.0.1:" + nativeTransportPort);
+  }
+
+  /**
+   * @return the configuration with the top level key set to the port, wherever it is not commented out.
+   */
+  static String setPort(final String yaml, final String portKey, final int port) {
+    return yaml.replaceAll("(?m)^" + portKey + ":.*$", portKey + ": " + port);
+  }
+
+  private static String readYaml() throws IOException {
+    try (final InputStream in = EmbeddedCassandraConfig.class.getResourceAsStream(useFastProfile()
+        ? FAST_PROFILE_YML_FILE
+        : "/" + EmbeddedCassandraServerHelper.DEFAULT_CASSANDRA_YML_FILE)) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Makes the contact points of the embedded node known to the initializers and the service under test.
+   */
+  void publish() {
+    //With the default ports, contact points configured by the test are left alone, as they always were.
+    if (dynamicPorts)
+      TestEnvironment.publishProperty(TestEnvironment.CASSANDRA_CONTACT_POINTS_PROPERTY, contactPoints);
+  }
+
+  void startEmbeddedCassandra(final long timeoutMillis) throws Exception {
+    //cassandra-unit starts from its own configuration only if neither has been changed.
+    if (dynamicPorts || fastProfile) {
+      writeYamlFile();
+      EmbeddedCassandraServerHelper.startEmbeddedCassandra(yamlFile.toFile(), directory.toString(), timeoutMillis);
+    } else {
+      EmbeddedCassandraServerHelper.startEmbeddedCassandra(timeoutMillis);
+    }
+  }
+
+  void writeYamlFile() throws IOException {
+    Files.createDirectories(directory);
+    Files.write(yamlFile, yaml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  Path getDirectory() {
+    return directory;
+  }
+
+  Path getYamlFile() {
+    return yamlFile;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.cassandra;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.CassandraDaemon;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the data directories of the embedded Cassandra node once the meta keyspace is set up,
+ * and starts later runs from that copy.  The node is started directly, because cassandra-unit
+ * wipes the data directories on start.  Everything is flushed before the copy, so the restored
+ * node has no commit log to replay.
+ */
+final class EmbeddedCassandraSnapshot {
+
+  //Bump whenever the schema set up before the snapshot changes.
+  private static final String SNAPSHOT_FORMAT = "1";
+  private static final String SNAPSHOT_PROPERTIES = "snapshot.properties";
+  private static final String FORMAT_KEY = "format";
+  private static final String CASSANDRA_VERSION_KEY = "cassandraVersion";
+  private static final String DATA_DIRECTORY_KEY_PREFIX = "dataDirectory.";
+
+  private static boolean nodeStarted;
+  private static boolean restoredNodeRunning;
+
+  private EmbeddedCassandraSnapshot() {
+  }
+
+  /**
+   * Starts the embedded node from the snapshot in the given directory.
+   *
+   * @return false if there is no usable snapshot, or a node was already started in this JVM.
+   */
+  static synchronized boolean restore(
+      final String snapshotDirectory,
+      final EmbeddedCassandraConfig config,
+      final long timeoutMillis) throws Exception {
+    if (nodeStarted)
+      return false;
+
+    final Properties snapshotProperties = readProperties(Paths.get(snapshotDirectory));
+    if (snapshotProperties == null)
+      return false;
+
+    final Path cassandraDirectory = config.getDirectory().toAbsolutePath();
+    deleteRecursively(cassandraDirectory);
+    config.writeYamlFile();
+    for (final String key : snapshotProperties.stringPropertyNames()) {
+      if (key.startsWith(DATA_DIRECTORY_KEY_PREFIX))
+        copyRecursively(
+            Paths.get(snapshotDirectory, key.substring(DATA_DIRECTORY_KEY_PREFIX.length())),
+            cassandraDirectory.resolve(snapshotProperties.getProperty(key)));
+    }
+
+    System.setProperty("cassandra.config", config.getYamlFile().toAbsolutePath().toUri().toString());
+    System.setProperty("cassandra-foreground", "true");
+    System.setProperty("cassandra.native.epoll.enabled", "false");
+    System.setProperty("cassandra.unsafesystem", "true");
+
+    final CountDownLatch startupLatch = new CountDownLatch(1);
+    final Thread startupThread = new Thread(() -> {
+      new CassandraDaemon(true).activate();
+      startupLatch.countDown();
+    }, "embedded-cassandra-restore");
+    startupThread.setDaemon(true);
+    startupThread.start();
+    if (!startupLatch.await(timeoutMillis, TimeUnit.MILLISECONDS))
+      throw new IllegalStateException("Restored Cassandra node did not start within " + timeoutMillis + " ms.");
+
+    nodeStarted = true;
+    restoredNodeRunning = true;
+    return true;
+  }
+
+  /**
+   * Takes a snapshot of the running embedded node into the given directory, unless one is there.
+   */
+  static synchronized void takeIfAbsent(
+      final String snapshotDirectory,
+      final EmbeddedCassandraConfig config) throws IOException {
+    nodeStarted = true;
+    final Path snapshotPath = Paths.get(snapshotDirectory).toAbsolutePath();
+    if (readProperties(snapshotPath) != null)
+      return;
+
+    final List<String> keyspaces = StorageService.instance.getKeyspaces();
+    for (final String keyspace : keyspaces) {
+      StorageService.instance.disableAutoCompaction(keyspace);
+    }
+    try {
+      for (final String keyspace : keyspaces) {
+        StorageService.instance.forceKeyspaceFlush(keyspace);
+      }
+
+      //Taken next to the snapshot directory and moved into place, since parallel forks may race for it.
+      final Path partialSnapshotPath = snapshotPath.resolveSibling(
+          snapshotPath.getFileName() + "-" + config.getDirectory().getFileName());
+      deleteRecursively(partialSnapshotPath);
+      Files.createDirectories(partialSnapshotPath);
+      final Path cassandraDirectory = config.getDirectory().toAbsolutePath();
+      final Properties snapshotProperties = new Properties();
+      final String[] dataDirectories = DatabaseDescriptor.getAllDataFileLocations();
+      for (int i = 0; i < dataDirectories.length; i++) {
+        final Path dataDirectory = Paths.get(dataDirectories[i]).toAbsolutePath();
+        copyRecursively(dataDirectory, partialSnapshotPath.resolve(Integer.toString(i)));
+        snapshotProperties.setProperty(DATA_DIRECTORY_KEY_PREFIX + i,
+            dataDirectory.startsWith(cassandraDirectory)
+                ? cassandraDirectory.relativize(dataDirectory).toString()
+                : dataDirectory.toString());
+      }
+      snapshotProperties.setProperty(FORMAT_KEY, SNAPSHOT_FORMAT);
+      snapshotProperties.setProperty(CASSANDRA_VERSION_KEY, FBUtilities.getReleaseVersionString());
+      try (final OutputStream out = Files.newOutputStream(partialSnapshotPath.resolve(SNAPSHOT_PROPERTIES))) {
+        snapshotProperties.store(out, null);
+      }
+      if (readProperties(snapshotPath) != null) {
+        //Another fork got there first, its snapshot is just as good.
+        deleteRecursively(partialSnapshotPath);
+        return;
+      }
+      deleteRecursively(snapshotPath);
+      try {
+        Files.move(partialSnapshotPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE);
+      } catch (final IOException ex) {
+        //Another fork got there first, its snapshot is just as good.
+        deleteRecursively(partialSnapshotPath);
+      }
+    } finally {
+      for (final String keyspace : keyspaces) {
+        StorageService.instance.enableAutoCompaction(keyspace);
+      }
+    }
+  }
+
+  /**
+   * @return true if the node of this JVM was started from a snapshot, rather than by cassandra-unit.
+   */
+  static synchronized boolean isRestoredNodeRunning() {
+    return restoredNodeRunning;
+  }
+
+  private static Properties readProperties(final Path snapshotPath) throws IOException {
+    final Path propertiesFile = snapshotPath.resolve(SNAPSHOT_PROPERTIES);
+    if (!Files.isRegularFile(propertiesFile))
+      return null;
+
+    final Properties snapshotProperties = new Properties();
+    try (final InputStream in = Files.newInputStream(propertiesFile)) {
+      snapshotProperties.load(in);
+    }
+    if (!SNAPSHOT_FORMAT.equals(snapshotProperties.getProperty(FORMAT_KEY))
+        || !FBUtilities.getReleaseVersionString().equals(snapshotProperties.getProperty(CASSANDRA_VERSION_KEY)))
+      return null;
+    return snapshotProperties;
+  }
+
+  private static void copyRecursively(final Path source, final Path target) throws IOException {
+    if (!Files.exists(source))
+      return;
+
+    Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        try {
+          Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final NoSuchFileException ignored) {
+          //Temporary files of the node may disappear while they are walked.
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static void deleteRecursively(final Path path) throws IOException {
+    if (!Files.exists(path))
+      return;
+
+    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+        if (exc != null)
+          throw exc;
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.postgresql;
+
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Holds the one embedded PostgreSQL server of this JVM. The server is started by the first
+ * initializer which needs it and stays up for every later test class, until the JVM exits.
+ */
+final class EmbeddedPostgreSQLServer {
+
+  private static final Logger logger = LoggerFactory.getLogger(EmbeddedPostgreSQLServer.class);
+
+  private static EmbeddedPostgres pg;
+  private static boolean shutdownHookRegistered;
+
+  private EmbeddedPostgreSQLServer() {
+  }
+
+  interface Starter {
+    EmbeddedPostgres start() throws Exception;
+  }
+
+  /**
+   * @return true if the server was started by this call, false if an already running one was reused.
+   */
+  static synchronized boolean acquire(final Starter starter) throws Exception {
+    if (pg != null)
+      return false;
+
+    pg = starter.start();
+    if (!shutdownHookRegistered) {
+      Runtime.getRuntime().addShutdownHook(
+          new Thread(() -> {
+            //Pooled and released tenant databases are dropped while the server is still up.
+            PostgreSQLTenantPool.closeShared();
+            shutdown();
+          }, "embedded-postgresql-shutdown"));
+      shutdownHookRegistered = true;
+    }
+    return true;
+  }
+
+  static synchronized boolean isRunning() {
+    return pg != null;
+  }
+
+  static synchronized int port() {
+    if (pg == null)
+      throw new IllegalStateException("Embedded PostgreSQL is not running.");
+    return pg.getPort();
+  }
+
+  static synchronized void shutdown() {
+    if (pg == null)
+      return;
+
+    try {
+      pg.close();
+    } catch (final IOException ex) {
+      logger.warn("Could not stop the embedded PostgreSQL server.", ex);
+    } finally {
+      pg = null;
+    }
+  }
+}
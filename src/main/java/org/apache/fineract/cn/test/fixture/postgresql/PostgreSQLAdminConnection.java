@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.postgresql;
+
+import org.apache.fineract.cn.test.env.TestEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A kept-alive connection to the meta database, shared by all tenant operations, together with
+ * the statements prepared on it.  Borrow one with {@link #borrow()} and close it to hand it
+ * back.  A few idle connections are kept, so that concurrent tenant setup doesn't serialize.
+ */
+final class PostgreSQLAdminConnection implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(PostgreSQLAdminConnection.class);
+  private static final int MAX_IDLE = 4;
+  private static final BlockingQueue<PostgreSQLAdminConnection> idle = new LinkedBlockingQueue<>(MAX_IDLE);
+
+  private final Connection connection;
+  private final Map<String, PreparedStatement> preparedStatements;
+
+  private PostgreSQLAdminConnection(final Connection connection) throws SQLException {
+    this.connection = connection;
+    this.preparedStatements = new HashMap<>();
+    connection.setAutoCommit(true);
+  }
+
+  static PostgreSQLAdminConnection borrow() throws SQLException {
+    PostgreSQLAdminConnection adminConnection;
+    while ((adminConnection = idle.poll()) != null) {
+      if (!adminConnection.connection.isClosed())
+        return adminConnection;
+    }
+    return new PostgreSQLAdminConnection(PostgreSQLInitializer.connect(System.getProperty(
+        TestEnvironment.POSTGRESQL_DATABASE_NAME_PROPERTY, TestEnvironment.POSTGRESQL_DATABASE_NAME_DEFAULT)));
+  }
+
+  /**
+   * Closes all idle connections, for example because the server they point to is going away.
+   */
+  static void closeIdle() {
+    PostgreSQLAdminConnection adminConnection;
+    while ((adminConnection = idle.poll()) != null) {
+      adminConnection.discard();
+    }
+  }
+
+  Connection connection() {
+    return connection;
+  }
+
+  /**
+   * @return a statement prepared on this connection.  It stays open for the next borrower, so
+   * callers must not close it.
+   */
+  PreparedStatement prepare(final String sql) throws SQLException {
+    PreparedStatement preparedStatement = preparedStatements.get(sql);
+    if (preparedStatement == null) {
+      preparedStatement = connection.prepareStatement(sql);
+      preparedStatements.put(sql, preparedStatement);
+    }
+    return preparedStatement;
+  }
+
+  @Override
+  public void close() {
+    try {
+      if (!connection.isClosed() && connection.getAutoCommit() && idle.offer(this))
+        return;
+    } catch (final SQLException ignored) {
+      //Not reusable, fall through and discard it.
+    }
+    discard();
+  }
+
+  private void discard() {
+    try {
+      connection.close();
+    } catch (final SQLException ex) {
+      //The next borrow opens a new connection, and reports it if the server is unreachable.
+      logger.warn("Could not close an admin connection to the meta database.", ex);
+    }
+  }
+}
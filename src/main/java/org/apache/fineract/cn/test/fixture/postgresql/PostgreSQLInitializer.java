@@ -21,15 +21,49 @@ package org.apache.fineract.cn.test.fixture.postgresql;
 import com.opentable.db.postgres.embedded.EmbeddedPostgres;
 import org.apache.fineract.cn.test.env.TestEnvironment;
 import org.apache.fineract.cn.test.fixture.DataStoreTenantInitializer;
+import org.apache.fineract.cn.test.fixture.SharedDataStoreDaemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fineract.cn.postgresql.util.JdbcUrlBuilder;
 
 @SuppressWarnings({"WeakerAccess", "unused", "SqlNoDataSourceInspection", "SqlDialectInspection"})
 public final class PostgreSQLInitializer extends DataStoreTenantInitializer {
 
+  //Keeps the bind parameters of one multi-row insert well below PostgreSQL's limit of 32767.
+  private static final Logger logger = LoggerFactory.getLogger(PostgreSQLInitializer.class);
+  private static final int TENANT_INSERT_BATCH_SIZE = 1000;
+  private static final String UNIQUE_VIOLATION = "23505";
+  private static final File TMPFS_DIRECTORY = new File("/dev/shm");
+  //Containers often mount a /dev/shm of only 64MB, which initdb and a few tenant databases fill up.
+  private static final long TMPFS_MIN_USABLE_BYTES = 1024L * 1024L * 1024L;
+  //A free port may be taken by another process before the server binds it, then the next one is tried.
+  private static final int EMBEDDED_START_ATTEMPTS = 3;
+
   private final boolean useExistingDB;
-  private static EmbeddedPostgres pg;
+  private static volatile String templateDatabaseName;
+  private static volatile boolean driverLoaded;
+  private static int embeddedPostgreSQLPort;
+  private PostgreSQLTenantPool tenantPool;
+  //Dropped in finish, since the embedded server outlives the test class, and the next one may reuse the names.
+  private final Set<String> createdTenants = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Brings a freshly created template database up to a schema version, for example by running
+   * the service's Flyway migrations against it.
+   */
+  @FunctionalInterface
+  public interface TemplateMigration {
+    void migrate(final String jdbcUrl, final String user, final String password) throws Exception;
+  }
 
   public PostgreSQLInitializer() {
     this(false);
@@ -38,21 +72,189 @@ public final class PostgreSQLInitializer extends DataStoreTenantInitializer {
   public PostgreSQLInitializer(final boolean useExistingDB) {
     super();
     this.useExistingDB = useExistingDB;
+    warmUpIfEnabled();
+  }
+
+  @Override
+  protected void publishConnectionProperties() throws Exception {
+    if (useExistingDB)
+      return;
+    if (SharedDataStoreDaemon.isEnabled())
+      SharedDataStoreDaemon.attach(SharedDataStoreDaemon.Store.POSTGRESQL);
+    else if (EmbeddedPostgreSQLServer.isRunning())
+      publishEmbeddedPostgreSQL();
+    else
+      publishEmbeddedPostgreSQL(embeddedPostgreSQLPort());
   }
 
   @Override
   public void initialize() throws Exception  {
     PostgreSQLInitializer.setup(useExistingDB);
+    tenantPool = PostgreSQLTenantPool.get();
   }
 
   @Override
   public void initializeTenant(final String tenantName) {
-    PostgreSQLInitializer.createDatabaseTenant(tenantName);
+    awaitInitialization();
+    final boolean leased = !useExistingDB && SharedDataStoreDaemon.isEnabled();
+    if (leased)
+      leaseTenant(tenantName);
+    //Thrown rather than printed, so that the tenant is rolled back in the other data stores, too.
+    try {
+      if (tenantPool == null || !tenantPool.acquire(tenantName))
+        PostgreSQLInitializer.createTenantDatabase(tenantName);
+    } catch (final SQLException | IllegalStateException ex) {
+      final IllegalStateException creationFailure =
+          new IllegalStateException("Could not create tenant database " + tenantName + ".", ex);
+      //The name is ours, so free it again for other test JVMs.
+      if (leased)
+        dropTenantOnFailure(tenantName, creationFailure);
+      throw creationFailure;
+    }
+    trackCreatedTenant(tenantName);
+  }
+
+  private void trackCreatedTenant(final String tenantName) {
+    if (!useExistingDB)
+      createdTenants.add(tenantName);
+  }
+
+  /**
+   * Claims a tenant name on a data store shared with other test JVMs by inserting it into the
+   * tenant_leases table up front.  The primary key makes sure only one JVM gets the name.  The
+   * tenants table is left to the test suite.
+   */
+  private static void leaseTenant(final String tenantName) {
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+      final PreparedStatement leaseStatement = adminConnection.prepare("INSERT INTO tenant_leases (identifier) VALUES (?)");
+      leaseStatement.setString(1, tenantName);
+      leaseStatement.execute();
+    } catch (final SQLException ex) {
+      if (UNIQUE_VIOLATION.equals(ex.getSQLState()))
+        throw new IllegalStateException("Tenant " + tenantName + " is leased by another test JVM.", ex);
+      throw new IllegalStateException("Could not lease tenant " + tenantName + ".", ex);
+    }
+  }
+
+  /**
+   * Creates the tenant databases one after another, since PostgreSQL serializes CREATE DATABASE
+   * anyway, and then registers all of them in the tenants table with a few multi-row inserts, if
+   * {@value TestEnvironment#POSTGRESQL_REGISTER_TENANTS_PROPERTY} is set.  If any of this fails,
+   * the databases created so far are dropped again, and the failure is thrown.  With a shared
+   * data store daemon, each name is leased before its database is created.
+   */
+  @Override
+  public void initializeTenants(final Collection<String> tenantNames) {
+    awaitInitialization();
+    final boolean leased = !useExistingDB && SharedDataStoreDaemon.isEnabled();
+    final List<String> batch = new ArrayList<>(tenantNames.size());
+    final List<PostgreSQLTenant> newTenants = new ArrayList<>(tenantNames.size());
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+      try (final Statement statement = adminConnection.connection().createStatement()) {
+        for (final String tenantName : tenantNames) {
+          //Once leased, the name is ours, and a rollback may drop it.  Without a lease, only once it is created.
+          if (leased) {
+            leaseTenant(tenantName);
+            batch.add(tenantName);
+          }
+          if (tenantPool != null && tenantPool.acquire(tenantName)) {
+            if (!leased)
+              batch.add(tenantName);
+            trackCreatedTenant(tenantName);
+            continue;
+          }
+          statement.execute(createDatabaseStatement(tenantName, templateDatabaseName()));
+          if (!leased)
+            batch.add(tenantName);
+          trackCreatedTenant(tenantName);
+          newTenants.add(newPostgreSQLTenant(tenantName));
+        }
+      }
+      if (!registersTenants())
+        return;
+      for (int from = 0; from < newTenants.size(); from += TENANT_INSERT_BATCH_SIZE) {
+        PostgreSQLTenant.insertAll(adminConnection,
+            newTenants.subList(from, Math.min(from + TENANT_INSERT_BATCH_SIZE, newTenants.size())));
+      }
+    } catch (final SQLException | IllegalStateException ex) {
+      final IllegalStateException creationFailure = new IllegalStateException(
+          "Could not create tenant databases, failed after " + batch.size() + " of " + tenantNames.size() + ".", ex);
+      for (final String tenantName : batch) {
+        dropTenantOnFailure(tenantName, creationFailure);
+      }
+      throw creationFailure;
+    }
+  }
+
+  @Override
+  protected void releaseTenant(final String tenantName) {
+    if (tenantPool != null && createdTenants.remove(tenantName))
+      tenantPool.recycle(tenantName);
+  }
+
+  /**
+   * Truncates all tables of the tenant database in one statement, except for Flyway's history.
+   */
+  @Override
+  protected void resetTenant(final String tenantName) {
+    awaitInitialization();
+    try (final Connection connection = connect(tenantName)) {
+      connection.setAutoCommit(true);
+      final List<String> tables = new ArrayList<>();
+      try (final Statement statement = connection.createStatement();
+           final ResultSet resultSet = statement.executeQuery(
+               "SELECT quote_ident(schemaname) || '.' || quote_ident(tablename) FROM pg_tables " +
+                   "WHERE schemaname NOT IN ('pg_catalog', 'information_schema') " +
+                   "AND tablename NOT IN ('schema_version', 'flyway_schema_history')")) {
+        while (resultSet.next()) {
+          tables.add(resultSet.getString(1));
+        }
+      }
+      if (tables.isEmpty())
+        return;
+
+      try (final Statement statement = connection.createStatement()) {
+        statement.execute("TRUNCATE TABLE " + String.join(", ", tables) + " RESTART IDENTITY CASCADE");
+      }
+    } catch (final SQLException ex) {
+      throw new IllegalStateException("Could not reset tenant " + tenantName + ".", ex);
+    }
+  }
 
+  private void dropTenantOnFailure(final String tenantName, final RuntimeException failure) {
+    try {
+      dropTenant(tenantName);
+    } catch (final RuntimeException ex) {
+      failure.addSuppressed(ex);
+    }
+  }
+
+  @Override
+  protected void dropTenant(final String tenantName) {
+    createdTenants.remove(tenantName);
+    if (tenantPool != null) {
+      tenantPool.recycle(tenantName);
+      return;
+    }
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+      dropDatabaseTenant(adminConnection, tenantName);
+    } catch (final SQLException ex) {
+      throw new IllegalStateException("Could not drop tenant " + tenantName + ".", ex);
+    }
   }
 
   @Override
   public void finish() {
+    for (final String tenantName : createdTenants) {
+      try {
+        dropTenant(tenantName);
+      } catch (final IllegalStateException ex) {
+        //The service under test may still hold connections to the tenant database.
+        logger.warn("Could not drop tenant {} after the test class.", tenantName, ex);
+      }
+    }
+    //The pool stays up for the next test class, see shutdown.
+    tenantPool = null;
     if (!useExistingDB) {
       try {
         PostgreSQLInitializer.tearDown();
@@ -66,64 +268,119 @@ public final class PostgreSQLInitializer extends DataStoreTenantInitializer {
     setup(false);
   }
   public static void setup(final boolean useExistingDB) throws Exception {
+    if (!useExistingDB && SharedDataStoreDaemon.isEnabled()) {
+      //The daemon has set up the meta database already.
+      SharedDataStoreDaemon.attach(SharedDataStoreDaemon.Store.POSTGRESQL);
+      return;
+    }
     if (!useExistingDB) {
-      PostgreSQLInitializer.startEmbeddedPostgreSQL();
-      PostgreSQLInitializer.createDatabaseSeshat();
+      if (EmbeddedPostgreSQLServer.acquire(PostgreSQLInitializer::startEmbeddedPostgreSQL))
+        PostgreSQLInitializer.createDatabaseSeshat();
+      else
+        PostgreSQLInitializer.publishEmbeddedPostgreSQL();
     }
   }
 
+  /**
+   * Releases this caller's use of the embedded server. The server is shared by the whole JVM and
+   * is only stopped at JVM exit, see {@link #shutdown()} to stop it earlier.  Tenant databases
+   * are dropped by the initializer which created them, and a registered template stays registered
+   * for later test classes, just like the server keeps the template.
+   */
   public static void tearDown() throws Exception {
-    if (PostgreSQLInitializer.pg != null) {
-      PostgreSQLInitializer.pg.close();
-      PostgreSQLInitializer.pg = null;
-    }
   }
 
-  private static void startEmbeddedPostgreSQL() throws Exception {
-    PostgreSQLInitializer.pg = EmbeddedPostgres.builder().setPort(Integer.valueOf(TestEnvironment.POSTGRESQL_PORT_DEFAULT)).start();
-    System.setProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY, TestEnvironment.POSTGRESQL_HOST_DEFAULT);
-    System.setProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY, TestEnvironment.POSTGRESQL_PORT_DEFAULT);
+  /**
+   * Stops the shared embedded server, regardless of who is still using it.
+   */
+  public static void shutdown() {
+    PostgreSQLTenantPool.closeShared();
+    PostgreSQLInitializer.templateDatabaseName = null;
+    PostgreSQLAdminConnection.closeIdle();
+    EmbeddedPostgreSQLServer.shutdown();
   }
 
-  private static void createDatabaseSeshat() {
-    try {
-      Class.forName(System.getProperty(TestEnvironment.POSTGRESQL_DRIVER_CLASS_PROPERTY));
-    } catch (ClassNotFoundException ex) {
-      throw new IllegalArgumentException(ex.getMessage(), ex);
+  private static EmbeddedPostgres startEmbeddedPostgreSQL() throws Exception {
+    for (int attempt = 1; ; attempt++) {
+      final int port = embeddedPostgreSQLPort();
+      final EmbeddedPostgres.Builder builder = EmbeddedPostgres.builder().setPort(port);
+      if (TestEnvironment.POSTGRESQL_EMBEDDED_PROFILE_FAST.equals(System.getProperty(
+          TestEnvironment.POSTGRESQL_EMBEDDED_PROFILE_PROPERTY, TestEnvironment.POSTGRESQL_EMBEDDED_PROFILE_DEFAULT)))
+        applyFastProfile(builder, port);
+      try {
+        final EmbeddedPostgres pg = builder.start();
+        publishEmbeddedPostgreSQL(pg.getPort());
+        return pg;
+      } catch (final IOException ex) {
+        if (!TestEnvironment.useDynamicPorts() || attempt == EMBEDDED_START_ATTEMPTS)
+          throw ex;
+        logger.warn("Could not start embedded PostgreSQL on port {}, retrying on another port.", port, ex);
+        clearEmbeddedPostgreSQLPort();
+      }
     }
+  }
 
-    final String jdbcUrl = JdbcUrlBuilder
-            .create(JdbcUrlBuilder.DatabaseType.POSTGRESQL)
-            .host(System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY))
-            .port(System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY))
-            .instanceName(TestEnvironment.POSTGRESQL_DATABASE_NAME)
-            .build();
-    try (final Connection pgConnection = DriverManager.getConnection(jdbcUrl,
-            System.getProperty(TestEnvironment.POSTGRESQL_USER_PROPERTY),
-            System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY));
+  /**
+   * Test data does not need to survive a crash, so writes are not flushed to disk.  Where a
+   * tmpfs with enough room is mounted, the data directory goes there, and the server does no
+   * disk I/O at all.
+   */
+  private static void applyFastProfile(final EmbeddedPostgres.Builder builder, final int port) {
+    builder
+        .setServerConfig("fsync", "off")
+        .setServerConfig("synchronous_commit", "off")
+        .setServerConfig("full_page_writes", "off")
+        .setServerConfig("shared_buffers", "256MB")
+        .setServerConfig("checkpoint_timeout", "1h")
+        //Small enough to leave room for the databases when the data directory is in memory.
+        .setServerConfig("max_wal_size", "128MB");
+    if (TMPFS_DIRECTORY.isDirectory() && TMPFS_DIRECTORY.canWrite()
+        && TMPFS_DIRECTORY.getUsableSpace() >= TMPFS_MIN_USABLE_BYTES)
+      builder
+          .setDataDirectory(new File(TMPFS_DIRECTORY, "fineract-cn-test-postgresql-" + port))
+          .setCleanDataDirectory(true);
+  }
+
+  /**
+   * @return the port the embedded server of this JVM listens on, chosen once so that it can be
+   * published before the server is started.
+   */
+  private static synchronized int embeddedPostgreSQLPort() {
+    if (embeddedPostgreSQLPort == 0)
+      embeddedPostgreSQLPort = TestEnvironment.useDynamicPorts()
+          ? TestEnvironment.findFreePort()
+          : Integer.valueOf(TestEnvironment.POSTGRESQL_PORT_DEFAULT);
+    return embeddedPostgreSQLPort;
+  }
+
+  private static synchronized void clearEmbeddedPostgreSQLPort() {
+    embeddedPostgreSQLPort = 0;
+  }
+
+  private static void publishEmbeddedPostgreSQL() {
+    publishEmbeddedPostgreSQL(EmbeddedPostgreSQLServer.port());
+  }
+
+  private static void publishEmbeddedPostgreSQL(final int port) {
+    TestEnvironment.publishProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY, TestEnvironment.POSTGRESQL_HOST_DEFAULT);
+    TestEnvironment.publishProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY, Integer.toString(port));
+  }
+
+  private static void createDatabaseSeshat() {
+    try (final Connection pgConnection = connect(TestEnvironment.POSTGRESQL_DATABASE_NAME);
          final Statement createDbStatement = pgConnection.createStatement()) {
       pgConnection.setAutoCommit(true);
       // create meta database seshat
       createDbStatement.execute("CREATE DATABASE " + System.getProperty(TestEnvironment.POSTGRESQL_DATABASE_NAME_PROPERTY));
       createDbStatement.execute("CREATE DATABASE playground");
     } catch (final SQLException ex) {
-      ex.printStackTrace();
+      throw new IllegalStateException("Could not create the meta database.", ex);
     }
 
-    final String tenantJdbcUrl = JdbcUrlBuilder
-            .create(JdbcUrlBuilder.DatabaseType.POSTGRESQL)
-            .host(System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY))
-            .port(System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY))
-            .instanceName(System.getProperty(TestEnvironment.POSTGRESQL_DATABASE_NAME_PROPERTY))
-            .build();
-
     try (
-            final Connection metaDbConnection = DriverManager.getConnection(tenantJdbcUrl,
-                    System.getProperty(TestEnvironment.POSTGRESQL_USER_PROPERTY),
-                    System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY));
-            final Statement metaStatement = metaDbConnection.createStatement()
+            final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow();
+            final Statement metaStatement = adminConnection.connection().createStatement()
     ) {
-      metaDbConnection.setAutoCommit(true);
       // create needed tenant management table
       metaStatement.execute("CREATE TABLE IF NOT EXISTS tenants (" +
               "  identifier    VARCHAR(32) NOT NULL," +
@@ -135,48 +392,176 @@ public final class PostgreSQLInitializer extends DataStoreTenantInitializer {
               "  pwd           VARCHAR(32) NOT NULL," +
               "  PRIMARY KEY (identifier)" +
               ")");
-    } catch (SQLException e) {
-      e.printStackTrace();
+      // tenant names claimed by the test JVMs sharing a data store daemon
+      metaStatement.execute("CREATE TABLE IF NOT EXISTS tenant_leases (" +
+              "  identifier    VARCHAR(32) NOT NULL," +
+              "  PRIMARY KEY (identifier)" +
+              ")");
+    } catch (final SQLException ex) {
+      throw new IllegalStateException("Could not create the tenant management tables.", ex);
     }
   }
 
+  /**
+   * Creates all further tenant databases as copies of a template database, instead of empty.
+   * The template is created and migrated only if it doesn't exist yet at the given schema
+   * version, so a suite on an existing database pays for the migration once per version.
+   * Tenants are then created with a file level copy of the template rather than a migration run.
+   */
+  public static void registerTemplate(
+      final String templateName,
+      final String schemaVersion,
+      final TemplateMigration migration) throws Exception {
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+      try (final Statement statement = adminConnection.connection().createStatement()) {
+        statement.execute("CREATE TABLE IF NOT EXISTS tenant_templates (" +
+            "  template_name  VARCHAR(63) NOT NULL," +
+            "  schema_version VARCHAR(64) NOT NULL," +
+            "  PRIMARY KEY (template_name)" +
+            ")");
+      }
+
+      if (!isTemplateAtVersion(adminConnection, templateName, schemaVersion)) {
+        try (final Statement statement = adminConnection.connection().createStatement()) {
+          statement.execute("DROP DATABASE IF EXISTS " + templateName);
+          statement.execute("CREATE DATABASE " + templateName);
+        }
+
+        final String templateJdbcUrl = JdbcUrlBuilder
+            .create(JdbcUrlBuilder.DatabaseType.POSTGRESQL)
+            .host(System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY))
+            .port(System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY))
+            .instanceName(templateName)
+            .build();
+        migration.migrate(templateJdbcUrl,
+            System.getProperty(TestEnvironment.POSTGRESQL_USER_PROPERTY),
+            System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY));
+
+        final PreparedStatement deleteStatement =
+            adminConnection.prepare("DELETE FROM tenant_templates WHERE template_name = ?");
+        deleteStatement.setString(1, templateName);
+        deleteStatement.execute();
+        final PreparedStatement insertStatement =
+            adminConnection.prepare("INSERT INTO tenant_templates (template_name, schema_version) VALUES (?, ?)");
+        insertStatement.setString(1, templateName);
+        insertStatement.setString(2, schemaVersion);
+        insertStatement.execute();
+      }
+    }
+    PostgreSQLInitializer.templateDatabaseName = templateName;
+  }
+
+  private static boolean isTemplateAtVersion(
+      final PostgreSQLAdminConnection adminConnection,
+      final String templateName,
+      final String schemaVersion) throws SQLException {
+    final PreparedStatement statement = adminConnection.prepare(
+        "SELECT t.schema_version FROM tenant_templates t JOIN pg_database d ON d.datname = t.template_name " +
+            "WHERE t.template_name = ?");
+    statement.setString(1, templateName);
+    try (final ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next() && schemaVersion.equals(resultSet.getString(1));
+    }
+  }
+
+  /**
+   * @return the name of the registered template database, or null if tenants start out empty.
+   */
+  static String templateDatabaseName() {
+    return PostgreSQLInitializer.templateDatabaseName;
+  }
+
+  static String createDatabaseStatement(final String databaseName, final String templateName) {
+    return "CREATE DATABASE " + databaseName + ((templateName == null) ? "" : " TEMPLATE " + templateName);
+  }
+
   public static void createDatabaseTenant(final String identifier) {
     try {
-      Class.forName(System.getProperty(TestEnvironment.POSTGRESQL_DRIVER_CLASS_PROPERTY));
-    } catch (ClassNotFoundException ex) {
-      throw new IllegalArgumentException(ex.getMessage(), ex);
+      createTenantDatabase(identifier);
+    } catch (final SQLException ex) {
+      throw new IllegalStateException("Could not create tenant " + identifier + ".", ex);
+    }
+  }
+
+  private static void createTenantDatabase(final String identifier) throws SQLException {
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+      try (final Statement statement = adminConnection.connection().createStatement()) {
+        // create tenant database
+        statement.execute(createDatabaseStatement(identifier, templateDatabaseName()));
+      }
+      // insert tenant connection info in management table
+      insertTenantIfAbsent(adminConnection, identifier);
+    }
+  }
+
+  static void dropDatabaseTenant(final PostgreSQLAdminConnection adminConnection, final String identifier) throws SQLException {
+    try (final Statement statement = adminConnection.connection().createStatement()) {
+      statement.execute("DROP DATABASE IF EXISTS " + identifier);
+    }
+    if (SharedDataStoreDaemon.isEnabled()) {
+      final PreparedStatement releaseLeaseStatement = adminConnection.prepare("DELETE FROM tenant_leases WHERE identifier = ?");
+      releaseLeaseStatement.setString(1, identifier);
+      releaseLeaseStatement.execute();
+    }
+    //Rows this initializer did not write belong to the test suite.
+    if (!registersTenants())
+      return;
+    final PreparedStatement deleteTenantStatement = adminConnection.prepare("DELETE FROM tenants WHERE identifier = ?");
+    deleteTenantStatement.setString(1, identifier);
+    deleteTenantStatement.execute();
+  }
+
+  static Connection connect(final String databaseName) throws SQLException {
+    if (!driverLoaded) {
+      try {
+        Class.forName(System.getProperty(TestEnvironment.POSTGRESQL_DRIVER_CLASS_PROPERTY));
+      } catch (ClassNotFoundException ex) {
+        throw new IllegalArgumentException(ex.getMessage(), ex);
+      }
+      driverLoaded = true;
     }
     final String jdbcUrl = JdbcUrlBuilder
         .create(JdbcUrlBuilder.DatabaseType.POSTGRESQL)
         .host(System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY))
         .port(System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY))
-        .instanceName(TestEnvironment.POSTGRESQL_DATABASE_NAME_DEFAULT)
+        .instanceName(databaseName)
         .build();
-    try (final Connection connection = DriverManager.getConnection(jdbcUrl,
+    return DriverManager.getConnection(jdbcUrl,
         System.getProperty(TestEnvironment.POSTGRESQL_USER_PROPERTY),
-        System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY))) {
-      try (final Statement statement = connection.createStatement()) {
-        connection.setAutoCommit(true);
-        // create tenant database
-        statement.execute("CREATE DATABASE " + identifier);
-        // insert tenant connection info in management table
-        try (final ResultSet resultSet = statement.executeQuery("SELECT * FROM tenants WHERE identifier = '" + identifier + "'")) {
-          if (resultSet.next()
-              && resultSet.getInt(1) == 0) {
-            final PostgreSQLTenant postgreSQLTenant = new PostgreSQLTenant();
-            postgreSQLTenant.setIdentifier(identifier);
-            postgreSQLTenant.setDriverClass(System.getProperty(TestEnvironment.POSTGRESQL_DRIVER_CLASS_PROPERTY));
-            postgreSQLTenant.setDatabaseName(identifier);
-            postgreSQLTenant.setHost(System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY));
-            postgreSQLTenant.setPort(System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY));
-            postgreSQLTenant.setUser(System.getProperty(TestEnvironment.POSTGRESQL_USER_PROPERTY));
-            postgreSQLTenant.setPassword(System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY));
-            postgreSQLTenant.insert(connection);
-          }
-        }
+        System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY));
+  }
+
+  /**
+   * Test suites which insert their own tenants rows leave {@value TestEnvironment#POSTGRESQL_REGISTER_TENANTS_PROPERTY}
+   * unset, so that their inserts don't hit the primary key.
+   */
+  static boolean registersTenants() {
+    return Boolean.parseBoolean(System.getProperty(
+        TestEnvironment.POSTGRESQL_REGISTER_TENANTS_PROPERTY, TestEnvironment.POSTGRESQL_REGISTER_TENANTS_DEFAULT));
+  }
+
+  static void insertTenantIfAbsent(final PostgreSQLAdminConnection adminConnection, final String identifier) throws SQLException {
+    if (!registersTenants())
+      return;
+    final PreparedStatement countTenantStatement = adminConnection.prepare("SELECT COUNT(*) FROM tenants WHERE identifier = ?");
+    countTenantStatement.setString(1, identifier);
+    try (final ResultSet resultSet = countTenantStatement.executeQuery()) {
+      if (resultSet.next()
+          && resultSet.getInt(1) == 0) {
+        newPostgreSQLTenant(identifier).insert(adminConnection);
       }
-    } catch (final SQLException ex) {
-      ex.printStackTrace();
     }
   }
+
+  private static PostgreSQLTenant newPostgreSQLTenant(final String identifier) {
+    final PostgreSQLTenant postgreSQLTenant = new PostgreSQLTenant();
+    postgreSQLTenant.setIdentifier(identifier);
+    postgreSQLTenant.setDriverClass(System.getProperty(TestEnvironment.POSTGRESQL_DRIVER_CLASS_PROPERTY));
+    postgreSQLTenant.setDatabaseName(identifier);
+    postgreSQLTenant.setHost(System.getProperty(TestEnvironment.POSTGRESQL_HOST_PROPERTY));
+    postgreSQLTenant.setPort(System.getProperty(TestEnvironment.POSTGRESQL_PORT_PROPERTY));
+    postgreSQLTenant.setUser(System.getProperty(TestEnvironment.POSTGRESQL_USER_PROPERTY));
+    postgreSQLTenant.setPassword(System.getProperty(TestEnvironment.POSTGRESQL_PASSWORD_PROPERTY));
+    return postgreSQLTenant;
+  }
 }
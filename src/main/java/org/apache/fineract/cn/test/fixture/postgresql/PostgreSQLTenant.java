@@ -18,9 +18,9 @@
  */
 package org.apache.fineract.cn.test.fixture.postgresql;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
 
 @SuppressWarnings({"SqlNoDataSourceInspection", "SqlDialectInspection", "WeakerAccess"})
 class PostgreSQLTenant {
@@ -32,12 +32,17 @@ class PostgreSQLTenant {
   private static final int INDEX_PORT = 5;
   private static final int INDEX_USER = 6;
   private static final int INDEX_PASSWORD = 7;
+  private static final int COLUMN_COUNT = 7;
 
   private static final String INSERT_STMT = " INSERT INTO " + "tenants" +
       " (identifier, driver_class, database_name, host, port, a_user, pwd) " +
       " values " +
       " (?, ?, ?, ?, ?, ?, ?) ";
 
+  private static final String INSERT_ALL_STMT = " INSERT INTO " + "tenants" +
+      " (identifier, driver_class, database_name, host, port, a_user, pwd) " +
+      " values ";
+
   private String identifier;
   private String driverClass;
   private String databaseName;
@@ -50,17 +55,53 @@ class PostgreSQLTenant {
     super();
   }
 
-  void insert(final Connection connection) throws SQLException {
-    try (final PreparedStatement insertTenantStatement = connection.prepareStatement(PostgreSQLTenant.INSERT_STMT)) {
-      insertTenantStatement.setString(INDEX_IDENTIFIER, this.getIdentifier());
-      insertTenantStatement.setString(INDEX_DRIVER_CLASS, this.getDriverClass());
-      insertTenantStatement.setString(INDEX_DATABASE_NAME, this.getDatabaseName());
-      insertTenantStatement.setString(INDEX_HOST, this.getHost());
-      insertTenantStatement.setString(INDEX_PORT, this.getPort());
-      insertTenantStatement.setString(INDEX_USER, this.getUser());
-      insertTenantStatement.setString(INDEX_PASSWORD, this.getPassword());
-      insertTenantStatement.execute();
+  void insert(final PostgreSQLAdminConnection adminConnection) throws SQLException {
+    final PreparedStatement insertTenantStatement = adminConnection.prepare(PostgreSQLTenant.INSERT_STMT);
+    insertTenantStatement.setString(INDEX_IDENTIFIER, this.getIdentifier());
+    insertTenantStatement.setString(INDEX_DRIVER_CLASS, this.getDriverClass());
+    insertTenantStatement.setString(INDEX_DATABASE_NAME, this.getDatabaseName());
+    insertTenantStatement.setString(INDEX_HOST, this.getHost());
+    insertTenantStatement.setString(INDEX_PORT, this.getPort());
+    insertTenantStatement.setString(INDEX_USER, this.getUser());
+    insertTenantStatement.setString(INDEX_PASSWORD, this.getPassword());
+    insertTenantStatement.execute();
+  }
+
+  /**
+   * Inserts all tenants with one multi-row statement, skipping those which already exist.
+   */
+  static void insertAll(final PostgreSQLAdminConnection adminConnection, final List<PostgreSQLTenant> tenants) throws SQLException {
+    if (tenants.isEmpty())
+      return;
+
+    try (final PreparedStatement insertTenantsStatement =
+             adminConnection.connection().prepareStatement(insertAllStatement(tenants.size()))) {
+      for (int i = 0; i < tenants.size(); i++) {
+        final PostgreSQLTenant tenant = tenants.get(i);
+        final int offset = i * COLUMN_COUNT;
+        insertTenantsStatement.setString(offset + INDEX_IDENTIFIER, tenant.getIdentifier());
+        insertTenantsStatement.setString(offset + INDEX_DRIVER_CLASS, tenant.getDriverClass());
+        insertTenantsStatement.setString(offset + INDEX_DATABASE_NAME, tenant.getDatabaseName());
+        insertTenantsStatement.setString(offset + INDEX_HOST, tenant.getHost());
+        insertTenantsStatement.setString(offset + INDEX_PORT, tenant.getPort());
+        insertTenantsStatement.setString(offset + INDEX_USER, tenant.getUser());
+        insertTenantsStatement.setString(offset + INDEX_PASSWORD, tenant.getPassword());
+      }
+      insertTenantsStatement.execute();
+    }
+  }
+
+  /**
+   * @return a multi-row insert into the tenants table with one row of parameters per tenant, which
+   * skips tenants already in the table.
+   */
+  static String insertAllStatement(final int tenantCount) {
+    final StringBuilder insertAllStatement = new StringBuilder(PostgreSQLTenant.INSERT_ALL_STMT);
+    for (int i = 0; i < tenantCount; i++) {
+      insertAllStatement.append((i == 0) ? " (?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
     }
+    insertAllStatement.append(" ON CONFLICT (identifier) DO NOTHING ");
+    return insertAllStatement.toString();
   }
 
   String getIdentifier() {
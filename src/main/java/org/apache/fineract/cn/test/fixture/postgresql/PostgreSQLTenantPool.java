@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.postgresql;
+
+import org.apache.fineract.cn.test.env.TestEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates tenant databases ahead of time on a background thread, so that handing one out
+ * to a tenant is only a rename.  Released tenant databases are dropped in the background.
+ * If no pooled database is ready, the caller falls back to creating one directly.  Like the
+ * embedded server, the pool is shared by all test classes of the JVM.
+ */
+@SuppressWarnings({"SqlNoDataSourceInspection", "SqlDialectInspection"})
+final class PostgreSQLTenantPool implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(PostgreSQLTenantPool.class);
+  private static final String POOLED_DATABASE_PREFIX = "pooled";
+
+  private static PostgreSQLTenantPool instance;
+  private static boolean shutdownHookRegistered;
+
+  private final BlockingQueue<PooledDatabase> available;
+  private final ExecutorService executor;
+  private final Random random;
+  //Set by the background thread, and thrown by the next acquire.
+  private final AtomicReference<SQLException> provisioningFailure;
+  private volatile boolean closed;
+
+  PostgreSQLTenantPool(final int size) {
+    this.available = new LinkedBlockingQueue<>();
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "postgresql-tenant-pool");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.random = new Random();
+    this.provisioningFailure = new AtomicReference<>();
+    for (int i = 0; i < size; i++) {
+      executor.execute(this::provision);
+    }
+  }
+
+  /**
+   * @return the pool of this JVM, started on first use, or null if
+   * {@value TestEnvironment#POSTGRESQL_TENANT_POOL_SIZE_PROPERTY} is zero.
+   */
+  static synchronized PostgreSQLTenantPool get() {
+    if (instance != null)
+      return instance;
+
+    final int size = Integer.parseInt(System.getProperty(
+        TestEnvironment.POSTGRESQL_TENANT_POOL_SIZE_PROPERTY, TestEnvironment.POSTGRESQL_TENANT_POOL_SIZE_DEFAULT));
+    if (size <= 0)
+      return null;
+
+    instance = new PostgreSQLTenantPool(size);
+    if (!shutdownHookRegistered) {
+      Runtime.getRuntime().addShutdownHook(
+          new Thread(PostgreSQLTenantPool::closeShared, "postgresql-tenant-pool-shutdown"));
+      shutdownHookRegistered = true;
+    }
+    return instance;
+  }
+
+  /**
+   * Closes the pool of this JVM, if there is one.  The next {@link #get()} starts a new one.
+   */
+  static synchronized void closeShared() {
+    if (instance == null)
+      return;
+
+    instance.close();
+    instance = null;
+  }
+
+  /**
+   * Hands out a pooled database, renamed to the tenant identifier, and replaces it in the pool.
+   *
+   * @return false if no pooled database was ready, or it couldn't be handed out.
+   * @throws IllegalStateException if creating a pooled database failed since the last acquire.
+   */
+  boolean acquire(final String identifier) {
+    final SQLException failure = provisioningFailure.getAndSet(null);
+    if (failure != null)
+      throw new IllegalStateException("Creating a pooled tenant database failed.", failure);
+
+    final String templateName = PostgreSQLInitializer.templateDatabaseName();
+    PooledDatabase pooledDatabase;
+    while ((pooledDatabase = available.poll()) != null
+        && !Objects.equals(pooledDatabase.templateName, templateName)) {
+      //Created before the current template was registered.
+      recycle(pooledDatabase.name);
+      executor.execute(this::provision);
+    }
+    if (pooledDatabase == null)
+      return false;
+
+    final String pooledDatabaseName = pooledDatabase.name;
+    executor.execute(this::provision);
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+      try (final Statement statement = adminConnection.connection().createStatement()) {
+        statement.execute("ALTER DATABASE " + pooledDatabaseName + " RENAME TO " + identifier);
+      }
+      PostgreSQLInitializer.insertTenantIfAbsent(adminConnection, identifier);
+      return true;
+    } catch (final SQLException ex) {
+      logger.warn("Could not hand out pooled database {} to tenant {}, creating it directly.", pooledDatabaseName, identifier, ex);
+      return false;
+    }
+  }
+
+  void recycle(final String identifier) {
+    executor.execute(() -> {
+      try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow()) {
+        PostgreSQLInitializer.dropDatabaseTenant(adminConnection, identifier);
+      } catch (final SQLException ex) {
+        //The service under test may still hold connections to the tenant database.
+        logger.warn("Could not drop tenant database {}.", identifier, ex);
+      }
+    });
+  }
+
+  /**
+   * Lets queued drops of released tenant databases finish, then drops the unused pooled ones.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdown();
+    try {
+      executor.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    final List<PooledDatabase> unused = new ArrayList<>();
+    available.drainTo(unused);
+    if (unused.isEmpty())
+      return;
+
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow();
+         final Statement statement = adminConnection.connection().createStatement()) {
+      for (final PooledDatabase pooledDatabase : unused) {
+        statement.execute("DROP DATABASE IF EXISTS " + pooledDatabase.name);
+      }
+    } catch (final SQLException ex) {
+      logger.warn("Could not drop {} unused pooled tenant databases.", unused.size(), ex);
+    }
+  }
+
+  private void provision() {
+    if (closed)
+      return;
+
+    final String pooledDatabaseName = POOLED_DATABASE_PREFIX + Math.abs(random.nextInt());
+    final String templateName = PostgreSQLInitializer.templateDatabaseName();
+    try (final PostgreSQLAdminConnection adminConnection = PostgreSQLAdminConnection.borrow();
+         final Statement statement = adminConnection.connection().createStatement()) {
+      statement.execute(PostgreSQLInitializer.createDatabaseStatement(pooledDatabaseName, templateName));
+      available.add(new PooledDatabase(pooledDatabaseName, templateName));
+    } catch (final SQLException ex) {
+      logger.warn("Could not create pooled tenant database {}.", pooledDatabaseName, ex);
+      if (!provisioningFailure.compareAndSet(null, ex))
+        provisioningFailure.get().addSuppressed(ex);
+    }
+  }
+
+  private static class PooledDatabase {
+    private final String name;
+    private final String templateName;
+
+    private PooledDatabase(final String name, final String templateName) {
+      this.name = name;
+      this.templateName = templateName;
+    }
+  }
+}
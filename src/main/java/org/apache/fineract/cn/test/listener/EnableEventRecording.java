@@ -36,4 +36,21 @@ import java.lang.annotation.Target;
 public @interface EnableEventRecording {
 
   long maxWait() default 30000L;
+
+  /**
+   * The maximum number of events kept, or zero to keep any number.
+   */
+  long maxEvents() default 0L;
+
+  /**
+   * The maximum age in milliseconds of events kept, or zero to keep events of any age.
+   */
+  long maxAge() default 0L;
+
+  /**
+   * The approximate maximum number of bytes of event payload kept, or zero to keep any amount.
+   */
+  long maxBytes() default 0L;
+
+  EvictionPolicy evictionPolicy() default EvictionPolicy.FIFO;
 }
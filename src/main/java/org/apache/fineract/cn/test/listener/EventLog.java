@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The events recorded for one tenant and operation.  Each log has its own lock and
+ * condition, so a waiter is only woken by events it could possibly match.
+ *
+ * The log is append-only.  Waiters read it through their own {@link Cursor}, and take
+ * a matched event by claiming it rather than by removing it, so concurrent waiters never
+ * remove, re-add or reorder each other's events.  Events only leave the log from its head:
+ * when it is cleared, when the {@link EventRetention} evicts them, or once they and all
+ * events before them are claimed.
+ *
+ * @author Myrle Krantz
+ */
+class EventLog {
+
+  private final EventRetention retention;
+  private final EventRecorderStatistics statistics;
+  private final Lock lock;
+  private final Condition eventAdded;
+  private final Set<Runnable> listeners;
+  private volatile Node head;
+  private Node tail;
+  private long size;
+  private long bytes;
+  private volatile long lastUsed;
+  private volatile long recordedCount;
+
+  EventLog(final EventRetention retention, final EventRecorderStatistics statistics) {
+    this.retention = retention;
+    this.statistics = statistics;
+    this.lock = new ReentrantLock();
+    this.eventAdded = lock.newCondition();
+    this.listeners = ConcurrentHashMap.newKeySet();
+    this.head = new Node(null, 0);
+    this.tail = head;
+    this.size = 0;
+    this.bytes = 0;
+    this.lastUsed = System.nanoTime();
+    this.recordedCount = 0;
+  }
+
+  void add(final EventRecord event) {
+    lock.lock();
+    try {
+      final Node node = new Node(event, tail.sequence + 1);
+      tail.next = node;
+      tail = node;
+      size++;
+      bytes += event.size();
+      lastUsed = System.nanoTime();
+      //noinspection NonAtomicOperationOnVolatileField, only ever written under the lock.
+      recordedCount++;
+      eventAdded.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    retention.added(event);
+    notifyListeners();
+  }
+
+  /**
+   * Runs every listener, even if an earlier one fails, so that no waiter misses the event.
+   */
+  private void notifyListeners() {
+    RuntimeException failure = null;
+    for (final Runnable listener : listeners) {
+      try {
+        listener.run();
+      } catch (final RuntimeException ex) {
+        if (failure == null)
+          failure = ex;
+        else
+          failure.addSuppressed(ex);
+      }
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * Registers a listener which is run on the recording thread after each event is added.
+   * This is how a waiter watching several logs at once is woken.
+   */
+  void addListener(final Runnable listener) {
+    listeners.add(listener);
+  }
+
+  void removeListener(final Runnable listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @return a cursor positioned before the oldest event still in the log.
+   */
+  Cursor cursor() {
+    lastUsed = System.nanoTime();
+    return new Cursor(head);
+  }
+
+  /**
+   * @return the {@link System#nanoTime()} at which an event was last added or waited for.
+   */
+  long lastUsed() {
+    return lastUsed;
+  }
+
+  /**
+   * @return the number of events ever added to this log, including those no longer in it.
+   */
+  long recordedCount() {
+    return recordedCount;
+  }
+
+  /**
+   * @return the oldest event still in the log, or null if it is empty.
+   */
+  EventRecord oldest() {
+    final Node first = head.next;
+    return (first == null) ? null : first.event;
+  }
+
+  /**
+   * @return true if an event was evicted, false if the log was empty.
+   */
+  boolean evictOldest() {
+    final EventRecord evicted;
+    lock.lock();
+    try {
+      final Node first = head.next;
+      if (first == null)
+        return false;
+      head = first;
+      evicted = first.event;
+      size--;
+      bytes -= evicted.size();
+    } finally {
+      lock.unlock();
+    }
+    retention.removed(1, evicted.size());
+    return true;
+  }
+
+  /**
+   * Moves the head past the claimed events at the start of the log, so that they are not
+   * retained, nor walked again by new cursors.
+   */
+  private void dropClaimedPrefix() {
+    long removedCount = 0;
+    long removedBytes = 0;
+    lock.lock();
+    try {
+      for (Node first = head.next; first != null && first.event.isClaimed(); first = head.next) {
+        head = first;
+        removedCount++;
+        removedBytes += first.event.size();
+      }
+      size -= removedCount;
+      bytes -= removedBytes;
+    } finally {
+      lock.unlock();
+    }
+    if (removedCount > 0)
+      retention.removed(removedCount, removedBytes);
+  }
+
+  void clear() {
+    final long removedCount;
+    final long removedBytes;
+    lock.lock();
+    try {
+      head = tail;
+      removedCount = size;
+      removedBytes = bytes;
+      size = 0;
+      bytes = 0;
+    } finally {
+      lock.unlock();
+    }
+    retention.removed(removedCount, removedBytes);
+  }
+
+  private static class Node {
+    private final EventRecord event;
+    private final long sequence;
+    private volatile Node next;
+
+    private Node(final EventRecord event, final long sequence) {
+      this.event = event;
+      this.sequence = sequence;
+    }
+  }
+
+  class Cursor {
+    private Node position;
+
+    private Cursor(final Node position) {
+      this.position = position;
+    }
+
+    /**
+     * Reads the events added since this cursor was last moved, and claims the first
+     * unclaimed one which matches.
+     */
+    <T> boolean claimNextMatch(final Function<T, Boolean> payloadMatcher) {
+      for (EventRecord event = next(); event != null; event = next()) {
+        if (event.matches(payloadMatcher) && claim(event))
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return true if this call claimed the event, false if it was already claimed by another waiter.
+     */
+    boolean claim(final EventRecord event) {
+      if (!event.claim())
+        return false;
+      dropClaimedPrefix();
+      return true;
+    }
+
+    /**
+     * Moves this cursor to the next event which is neither claimed nor gone from the log.
+     *
+     * @return that event, or null if the cursor reached the end of the log.
+     */
+    EventRecord next() {
+      for (Node next = position.next; next != null; next = position.next) {
+        position = next;
+        if (next.sequence > head.sequence && !next.event.isClaimed()) {
+          statistics.inspected();
+          return next.event;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Waits until an event is added behind this cursor, or the timeout elapses.
+     */
+    void awaitEvent(final long timeout, final TimeUnit unit) throws InterruptedException {
+      long nanos = unit.toNanos(timeout);
+      lock.lock();
+      try {
+        while (position.next == null && nanos > 0) {
+          nanos = eventAdded.awaitNanos(nanos);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -18,19 +18,52 @@
  */
 package org.apache.fineract.cn.test.listener;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
 /**
+ * The payload is kept as the JSON it arrived in, and only deserialized the first time a
+ * waiter inspects it.  Most recorded events are never matched against, so this keeps
+ * deserialization off the thread which delivers the events.  A payload which can't be
+ * deserialized is logged once, and never matches.
+ *
  * @author Myrle Krantz
  */
 class EventRecord {
 
+  private static final Object NOT_DESERIALIZED = new Object();
+  private static final Object NOT_DESERIALIZABLE = new Object();
+
   private final String tenant;
   private final String operation;
-  private final Object payloadObject;
+  private final String payload;
+  private final Class<?> payloadClass;
+  private final Gson gson;
+  private final Logger logger;
+  private final AtomicBoolean claimed;
+  private final long recordedAt;
+  private volatile Object payloadObject;
 
-  EventRecord(final String tenant, final String operation, final Object payloadObject) {
+  EventRecord(
+      final String tenant,
+      final String operation,
+      final String payload,
+      final Class<?> payloadClass,
+      final Gson gson,
+      final Logger logger) {
     this.tenant = tenant;
     this.operation = operation;
-    this.payloadObject = payloadObject;
+    this.payload = payload;
+    this.payloadClass = payloadClass;
+    this.gson = gson;
+    this.logger = logger;
+    this.claimed = new AtomicBoolean(false);
+    this.recordedAt = System.nanoTime();
+    this.payloadObject = NOT_DESERIALIZED;
   }
 
   String getTenant() {
@@ -41,7 +74,64 @@ class EventRecord {
     return operation;
   }
 
+  String getPayload() {
+    return payload;
+  }
+
+  /**
+   * @return the {@link System#nanoTime()} at which the event was recorded.
+   */
+  long getRecordedAt() {
+    return recordedAt;
+  }
+
+  /**
+   * @return the approximate number of bytes held for this event, dominated by its payload characters.
+   */
+  long size() {
+    return (payload == null) ? 0 : 2L * payload.length();
+  }
+
   Object getPayloadObject() {
-    return payloadObject;
+    Object ret = payloadObject;
+    if (ret == NOT_DESERIALIZED) {
+      //Racing readers may each deserialize once, but they produce equal objects, and one of them is kept.
+      try {
+        ret = gson.fromJson(payload, payloadClass);
+        payloadObject = ret;
+      } catch (final JsonParseException ex) {
+        return markNotDeserializable(ex);
+      }
+    }
+    return ret;
+  }
+
+  private synchronized Object markNotDeserializable(final JsonParseException ex) {
+    if (payloadObject == NOT_DESERIALIZED) {
+      payloadObject = NOT_DESERIALIZABLE;
+      logger.warn("Payload {} of event {} for tenant {} can't be read as {}, so it will never match.",
+          payload, operation, tenant, payloadClass.getName(), ex);
+    }
+    return NOT_DESERIALIZABLE;
+  }
+
+  /**
+   * @return true if the payload could be deserialized, and the matcher accepts it.
+   */
+  <T> boolean matches(final Function<T, Boolean> payloadMatcher) {
+    final Object payloadObject = getPayloadObject();
+    //noinspection unchecked
+    return payloadObject != NOT_DESERIALIZABLE && payloadMatcher.apply((T) payloadObject);
+  }
+
+  boolean isClaimed() {
+    return claimed.get();
+  }
+
+  /**
+   * @return true if this call claimed the event, false if it was already claimed by another waiter.
+   */
+  boolean claim() {
+    return claimed.compareAndSet(false, true);
   }
 }
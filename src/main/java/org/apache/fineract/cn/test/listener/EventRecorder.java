@@ -18,6 +18,10 @@
  */
 package org.apache.fineract.cn.test.listener;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 @SuppressWarnings("WeakerAccess")
@@ -29,5 +33,75 @@ public interface EventRecorder {
 
   <T> boolean waitForMatch(final String operation, final Function<T, Boolean> payloadMatcher) throws InterruptedException;
 
+  /**
+   * Waits until every expectation is matched by a distinct recorded event for the current tenant,
+   * or until the maximum wait elapses.  By default the expectations are waited for one after
+   * another with {@link #waitForMatch}, so that each one which isn't met costs a full wait.
+   */
+  default ExpectationsResult waitForAll(final Collection<? extends Expectation<?>> expectations) throws InterruptedException {
+    final List<Expectation<?>> satisfied = new ArrayList<>();
+    final List<Expectation<?>> unsatisfied = new ArrayList<>();
+    for (final Expectation<?> expectation : expectations) {
+      if (waitForMatch(expectation.getOperation(), expectation.getPayloadMatcher()))
+        satisfied.add(expectation);
+      else
+        unsatisfied.add(expectation);
+    }
+    return new ExpectationsResult(satisfied, unsatisfied);
+  }
+
+  /**
+   * Waits until at least one expectation is matched by a recorded event for the current tenant,
+   * or until the maximum wait elapses.  By default the expectations are waited for one after
+   * another with {@link #waitForMatch}, until the first one is met.
+   */
+  default ExpectationsResult waitForAny(final Collection<? extends Expectation<?>> expectations) throws InterruptedException {
+    final List<Expectation<?>> satisfied = new ArrayList<>();
+    final List<Expectation<?>> unsatisfied = new ArrayList<>();
+    for (final Expectation<?> expectation : expectations) {
+      if (satisfied.isEmpty() && waitForMatch(expectation.getOperation(), expectation.getPayloadMatcher()))
+        satisfied.add(expectation);
+      else
+        unsatisfied.add(expectation);
+    }
+    return new ExpectationsResult(satisfied, unsatisfied);
+  }
+
+  /**
+   * Expects an event for the current tenant without blocking.  The returned future is completed
+   * with the matching payload by the thread which records the event, or completed exceptionally
+   * with a {@link java.util.concurrent.TimeoutException} once the maximum wait elapses.  By
+   * default the returned future fails with an {@link UnsupportedOperationException}.
+   */
+  default <T> CompletableFuture<T> expect(final String operation, final Function<T, Boolean> payloadMatcher) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    result.completeExceptionally(new UnsupportedOperationException(
+        getClass().getSimpleName() + " cannot expect events asynchronously."));
+    return result;
+  }
+
   void clear();
+
+  /**
+   * Removes the recorded events of one tenant.  By default this is not supported, since clearing
+   * all tenants instead would remove events which tests running in parallel still wait for.
+   */
+  default void clear(final String tenant) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot clear the events of one tenant.");
+  }
+
+  /**
+   * @return how many events were evicted to keep within the retention limits.  By default none,
+   * for recorders which don't limit retention.
+   */
+  default EvictionCounts getEvictionCounts() {
+    return new EvictionCounts(0L, 0L, 0L);
+  }
+
+  /**
+   * By default this is not supported, for recorders which don't collect metrics.
+   */
+  default EventRecorderMetrics getMetrics() {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " does not collect metrics.");
+  }
 }
@@ -26,6 +26,8 @@ import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
 import org.springframework.core.type.AnnotationMetadata;
 
+import java.util.Map;
+
 import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
 
 /**
@@ -38,12 +40,19 @@ class EventRecorderBeanDefiner implements ImportBeanDefinitionRegistrar {
       final AnnotationMetadata importingClassMetadata,
       final BeanDefinitionRegistry registry) {
 
-    final Object maxWait = importingClassMetadata.getAnnotationAttributes(
-        EnableEventRecording.class.getTypeName()).get("maxWait");
+    final Map<String, Object> attributes = importingClassMetadata.getAnnotationAttributes(
+        EnableEventRecording.class.getTypeName());
+    final Object maxWait = attributes.get("maxWait");
+    final EventRetention retention = new EventRetention(
+        (Long) attributes.get("maxEvents"),
+        (Long) attributes.get("maxAge"),
+        (Long) attributes.get("maxBytes"),
+        (EvictionPolicy) attributes.get("evictionPolicy"));
 
     final AbstractBeanDefinition beanDefinition = BeanDefinitionBuilder
         .genericBeanDefinition(InMemoryEventRecorder.class)
         .addConstructorArgValue(maxWait)
+        .addConstructorArgValue(retention)
         .addConstructorArgValue(new GsonBuilder().create())
         .addConstructorArgValue(LoggerFactory.getLogger("event-recorder-logger"))
         .setScope(SCOPE_SINGLETON)
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of what an {@link EventRecorder} has recorded and how long its waiters waited.
+ * Log its {@link #toString()} after a test run to see which waits dominate.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class EventRecorderMetrics {
+
+  private final SortedMap<String, SortedMap<String, Long>> recordedEvents;
+  private final long backlogDepth;
+  private final SortedMap<Long, Long> matchLatencyHistogram;
+  private final long matchCount;
+  private final long timeoutCount;
+  private final long inspectedEventCount;
+  private final EvictionCounts evictionCounts;
+
+  EventRecorderMetrics(
+      final SortedMap<String, SortedMap<String, Long>> recordedEvents,
+      final long backlogDepth,
+      final long[] matchLatencyBucketCounts,
+      final long timeoutCount,
+      final long inspectedEventCount,
+      final EvictionCounts evictionCounts) {
+    this.recordedEvents = Collections.unmodifiableSortedMap(recordedEvents);
+    this.backlogDepth = backlogDepth;
+    final SortedMap<Long, Long> histogram = new TreeMap<>();
+    long matches = 0;
+    for (int i = 0; i < matchLatencyBucketCounts.length; i++) {
+      histogram.put(EventRecorderStatistics.LATENCY_BUCKET_UPPER_BOUNDS_MILLIS[i], matchLatencyBucketCounts[i]);
+      matches += matchLatencyBucketCounts[i];
+    }
+    this.matchLatencyHistogram = Collections.unmodifiableSortedMap(histogram);
+    this.matchCount = matches;
+    this.timeoutCount = timeoutCount;
+    this.inspectedEventCount = inspectedEventCount;
+    this.evictionCounts = evictionCounts;
+  }
+
+  /**
+   * @return the number of events recorded since the recorder was created, by tenant and then by operation.
+   */
+  public SortedMap<String, SortedMap<String, Long>> getRecordedEvents() {
+    return recordedEvents;
+  }
+
+  public long getRecordedEventCount(final String tenant, final String operation) {
+    return recordedEvents.getOrDefault(tenant, Collections.emptySortedMap()).getOrDefault(operation, 0L);
+  }
+
+  /**
+   * @return the number of events currently held, whether or not they were already matched.
+   */
+  public long getBacklogDepth() {
+    return backlogDepth;
+  }
+
+  /**
+   * @return the number of waits which ended in a match, keyed by the exclusive upper bound in
+   * milliseconds of their wait-to-match latency.  The last bucket is keyed by {@link Long#MAX_VALUE}.
+   */
+  public SortedMap<Long, Long> getMatchLatencyHistogram() {
+    return matchLatencyHistogram;
+  }
+
+  public long getMatchCount() {
+    return matchCount;
+  }
+
+  /**
+   * @return the upper bound in milliseconds of the histogram bucket containing the given
+   * percentile (0 to 100) of wait-to-match latencies, or 0 if nothing was matched yet.
+   */
+  public long getMatchLatencyPercentileMillis(final double percentile) {
+    final long rank = (long) Math.ceil(matchCount * percentile / 100);
+    long seen = 0;
+    for (final Map.Entry<Long, Long> bucket : matchLatencyHistogram.entrySet()) {
+      seen += bucket.getValue();
+      if (seen >= rank && seen > 0)
+        return bucket.getKey();
+    }
+    return 0;
+  }
+
+  public long getTimeoutCount() {
+    return timeoutCount;
+  }
+
+  /**
+   * @return the number of times a waiter inspected a recorded event.  Every inspection beyond
+   * the match count is matching work spent on events the waiter didn't want.
+   */
+  public long getInspectedEventCount() {
+    return inspectedEventCount;
+  }
+
+  public EvictionCounts getEvictionCounts() {
+    return evictionCounts;
+  }
+
+  @Override
+  public String toString() {
+    final Map<String, Long> nonEmptyBuckets = new LinkedHashMap<>();
+    matchLatencyHistogram.forEach((upperBound, count) -> {
+      if (count > 0)
+        nonEmptyBuckets.put(bucketName(upperBound), count);
+    });
+    final StringBuilder ret = new StringBuilder("EventRecorderMetrics{")
+        .append("\n  backlogDepth=").append(backlogDepth)
+        .append("\n  matchCount=").append(matchCount)
+        .append(", timeoutCount=").append(timeoutCount)
+        .append(", inspectedEventCount=").append(inspectedEventCount)
+        .append("\n  matchLatency=").append(nonEmptyBuckets)
+        .append(", p50=").append(bucketName(getMatchLatencyPercentileMillis(50)))
+        .append(", p99=").append(bucketName(getMatchLatencyPercentileMillis(99)))
+        .append("\n  ").append(evictionCounts);
+    recordedEvents.forEach((tenant, operations) ->
+        ret.append("\n  recorded[").append(tenant).append("]=").append(operations));
+    return ret.append("\n}").toString();
+  }
+
+  private static String bucketName(final long upperBound) {
+    return (upperBound == Long.MAX_VALUE) ? "longer" : "<" + upperBound + "ms";
+  }
+}
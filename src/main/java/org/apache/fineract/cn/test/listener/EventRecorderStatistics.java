@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects what {@link EventRecorderMetrics} reports about waiters.  Updates are cheap and
+ * contention free, since they happen on the paths which record and match events.
+ */
+class EventRecorderStatistics {
+
+  static final long[] LATENCY_BUCKET_UPPER_BOUNDS_MILLIS =
+      {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, Long.MAX_VALUE};
+
+  private final LongAdder[] matchLatencyBuckets;
+  private final LongAdder timeouts;
+  private final LongAdder inspections;
+
+  EventRecorderStatistics() {
+    this.matchLatencyBuckets = new LongAdder[LATENCY_BUCKET_UPPER_BOUNDS_MILLIS.length];
+    for (int i = 0; i < matchLatencyBuckets.length; i++) {
+      matchLatencyBuckets[i] = new LongAdder();
+    }
+    this.timeouts = new LongAdder();
+    this.inspections = new LongAdder();
+  }
+
+  /**
+   * @param startedAt the {@link System#nanoTime()} at which the waiter started waiting.
+   */
+  void matched(final long startedAt) {
+    final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    for (int i = 0; i < LATENCY_BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+      if (latencyMillis < LATENCY_BUCKET_UPPER_BOUNDS_MILLIS[i]) {
+        matchLatencyBuckets[i].increment();
+        return;
+      }
+    }
+  }
+
+  void timedOut(final long count) {
+    timeouts.add(count);
+  }
+
+  void inspected() {
+    inspections.increment();
+  }
+
+  long[] matchLatencyBucketCounts() {
+    final long[] ret = new long[matchLatencyBuckets.length];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = matchLatencyBuckets[i].sum();
+    }
+    return ret;
+  }
+
+  long timeouts() {
+    return timeouts.sum();
+  }
+
+  long inspections() {
+    return inspections.sum();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the recorded events within the limits configured on {@link EnableEventRecording}.
+ * A limit of zero or less means that dimension is unbounded.  Limits are enforced each time
+ * an event is recorded, but the logs are only scanned once a limit is exceeded.
+ */
+class EventRetention {
+
+  private final long maxEvents;
+  private final long maxAgeNanos;
+  private final long maxBytes;
+  private final EvictionPolicy evictionPolicy;
+
+  private final AtomicLong eventCount;
+  private final AtomicLong byteCount;
+  private final AtomicLong evictedForCount;
+  private final AtomicLong evictedForAge;
+  private final AtomicLong evictedForBytes;
+  //At most the time the oldest retained event was recorded at, so that the age limit can be checked without a scan.
+  private volatile long oldestRecordedAt;
+
+  EventRetention(
+      final long maxEvents,
+      final long maxAge,
+      final long maxBytes,
+      final EvictionPolicy evictionPolicy) {
+    this.maxEvents = maxEvents;
+    this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAge);
+    this.maxBytes = maxBytes;
+    this.evictionPolicy = evictionPolicy;
+    this.eventCount = new AtomicLong(0);
+    this.byteCount = new AtomicLong(0);
+    this.evictedForCount = new AtomicLong(0);
+    this.evictedForAge = new AtomicLong(0);
+    this.evictedForBytes = new AtomicLong(0);
+    this.oldestRecordedAt = System.nanoTime();
+  }
+
+  static EventRetention unbounded() {
+    return new EventRetention(0, 0, 0, EvictionPolicy.FIFO);
+  }
+
+  void added(final EventRecord event) {
+    if (eventCount.incrementAndGet() == 1)
+      oldestRecordedAt = event.getRecordedAt();
+    byteCount.addAndGet(event.size());
+  }
+
+  void removed(final long count, final long bytes) {
+    eventCount.addAndGet(-count);
+    byteCount.addAndGet(-bytes);
+  }
+
+  long eventCount() {
+    return eventCount.get();
+  }
+
+  EvictionCounts evictionCounts() {
+    return new EvictionCounts(evictedForCount.get(), evictedForAge.get(), evictedForBytes.get());
+  }
+
+  void enforce(final Collection<TenantEventLogs> tenantEventLogs) {
+    if (!isLimitExceeded())
+      return;
+
+    synchronized (this) {
+      while (true) {
+        final EventLog oldest = victim(tenantEventLogs, EvictionPolicy.FIFO);
+        if (oldest == null) {
+          oldestRecordedAt = System.nanoTime();
+          return;
+        }
+
+        if (maxAgeNanos > 0 && isOlderThanMaxAge(oldest))
+          evict(oldest, evictedForAge);
+        else if (maxEvents > 0 && eventCount.get() > maxEvents)
+          evict(victim(tenantEventLogs, evictionPolicy), evictedForCount);
+        else if (maxBytes > 0 && byteCount.get() > maxBytes)
+          evict(victim(tenantEventLogs, evictionPolicy), evictedForBytes);
+        else {
+          final EventRecord oldestEvent = oldest.oldest();
+          oldestRecordedAt = (oldestEvent == null) ? System.nanoTime() : oldestEvent.getRecordedAt();
+          return;
+        }
+      }
+    }
+  }
+
+  private boolean isLimitExceeded() {
+    return (maxEvents > 0 && eventCount.get() > maxEvents)
+        || (maxBytes > 0 && byteCount.get() > maxBytes)
+        || (maxAgeNanos > 0 && System.nanoTime() - oldestRecordedAt > maxAgeNanos);
+  }
+
+  private boolean isOlderThanMaxAge(final EventLog eventLog) {
+    final EventRecord oldestEvent = eventLog.oldest();
+    return oldestEvent != null && System.nanoTime() - oldestEvent.getRecordedAt() > maxAgeNanos;
+  }
+
+  private static void evict(final EventLog eventLog, final AtomicLong evictionCounter) {
+    if (eventLog != null && eventLog.evictOldest())
+      evictionCounter.incrementAndGet();
+  }
+
+  private static EventLog victim(final Collection<TenantEventLogs> tenantEventLogs, final EvictionPolicy evictionPolicy) {
+    EventLog victim = null;
+    long victimRank = 0;
+    for (final TenantEventLogs eventLogs : tenantEventLogs) {
+      for (final EventLog eventLog : eventLogs.eventLogs()) {
+        final EventRecord oldestEvent = eventLog.oldest();
+        if (oldestEvent == null)
+          continue;
+
+        final long rank = (evictionPolicy == EvictionPolicy.FIFO) ? oldestEvent.getRecordedAt() : eventLog.lastUsed();
+        if (victim == null || rank - victimRank < 0) {
+          victim = eventLog;
+          victimRank = rank;
+        }
+      }
+    }
+    return victim;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wakes a waiter which watches several {@link EventLog}s at once.  It is registered as a
+ * listener on each of them, and counts the events added since.
+ */
+class EventSignal implements Runnable {
+
+  private final Lock lock;
+  private final Condition signalled;
+  private long count;
+
+  EventSignal() {
+    this.lock = new ReentrantLock();
+    this.signalled = lock.newCondition();
+    this.count = 0;
+  }
+
+  @Override
+  public void run() {
+    lock.lock();
+    try {
+      count++;
+      signalled.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long count() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the signal has run since the given count was observed, or the timeout elapses.
+   */
+  void awaitAfter(final long observedCount, final long timeout, final TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lock();
+    try {
+      while (count == observedCount && nanos > 0) {
+        nanos = signalled.awaitNanos(nanos);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+/**
+ * How many events an {@link EventRecorder} evicted, by the retention limit which was exceeded.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class EvictionCounts {
+
+  private final long evictedForCount;
+  private final long evictedForAge;
+  private final long evictedForBytes;
+
+  EvictionCounts(final long evictedForCount, final long evictedForAge, final long evictedForBytes) {
+    this.evictedForCount = evictedForCount;
+    this.evictedForAge = evictedForAge;
+    this.evictedForBytes = evictedForBytes;
+  }
+
+  public long getEvictedForCount() {
+    return evictedForCount;
+  }
+
+  public long getEvictedForAge() {
+    return evictedForAge;
+  }
+
+  public long getEvictedForBytes() {
+    return evictedForBytes;
+  }
+
+  public long getTotal() {
+    return evictedForCount + evictedForAge + evictedForBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "EvictionCounts{" +
+        "evictedForCount=" + evictedForCount +
+        ", evictedForAge=" + evictedForAge +
+        ", evictedForBytes=" + evictedForBytes +
+        '}';
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+/**
+ * Decides which events are evicted first once a retention limit of {@link EnableEventRecording}
+ * is exceeded.  Events older than the maximum age are always evicted oldest first.
+ */
+@SuppressWarnings("unused")
+public enum EvictionPolicy {
+  /**
+   * Evict the oldest recorded event, regardless of its tenant or operation.
+   */
+  FIFO,
+  /**
+   * Evict the oldest event of the operation which was least recently recorded or waited for.
+   */
+  LRU_PER_OPERATION
+}
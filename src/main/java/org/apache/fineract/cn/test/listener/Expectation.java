@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * An event which a test expects to be recorded, for use with
+ * {@link EventRecorder#waitForAll} and {@link EventRecorder#waitForAny}.
+ *
+ * @param <T> the type of the event payload.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class Expectation<T> {
+
+  private final String operation;
+  private final Function<T, Boolean> payloadMatcher;
+
+  private Expectation(final String operation, final Function<T, Boolean> payloadMatcher) {
+    this.operation = operation;
+    this.payloadMatcher = payloadMatcher;
+  }
+
+  /**
+   * Expects an event for the operation with a payload equal to the given one.
+   */
+  public static <T> Expectation<T> of(final String operation, final T payload) {
+    return new Expectation<>(operation, equalTo(payload));
+  }
+
+  /**
+   * Expects an event for the operation with a payload accepted by the matcher.
+   */
+  public static <T> Expectation<T> matching(final String operation, final Function<T, Boolean> payloadMatcher) {
+    return new Expectation<>(operation, payloadMatcher);
+  }
+
+  static <T> Function<T, Boolean> equalTo(final T payload) {
+    return new Function<T, Boolean>() {
+      @Override
+      public Boolean apply(Object x) {
+        return Objects.equals(x, payload);
+      }
+
+      @Override
+      public String toString() {
+        return String.valueOf(payload);
+      }
+    };
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public Function<T, Boolean> getPayloadMatcher() {
+    return payloadMatcher;
+  }
+
+  boolean matches(final EventRecord event) {
+    return event.matches(payloadMatcher);
+  }
+
+  @Override
+  public String toString() {
+    return "Expectation{" +
+        "operation='" + operation + '\'' +
+        ", payload=" + payloadMatcher +
+        '}';
+  }
+}
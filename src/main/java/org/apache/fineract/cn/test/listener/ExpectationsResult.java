@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of {@link EventRecorder#waitForAll} or {@link EventRecorder#waitForAny}.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ExpectationsResult {
+
+  private final List<Expectation<?>> satisfied;
+  private final List<Expectation<?>> unsatisfied;
+
+  ExpectationsResult(final List<Expectation<?>> satisfied, final List<Expectation<?>> unsatisfied) {
+    this.satisfied = Collections.unmodifiableList(satisfied);
+    this.unsatisfied = Collections.unmodifiableList(unsatisfied);
+  }
+
+  /**
+   * @return the expectations which were matched by a recorded event, in the order they were matched.
+   */
+  public List<Expectation<?>> getSatisfied() {
+    return satisfied;
+  }
+
+  /**
+   * @return the expectations which were not matched when the wait ended.  These timed out, unless
+   * the wait was {@link EventRecorder#waitForAny} and ended because another expectation was matched.
+   */
+  public List<Expectation<?>> getUnsatisfied() {
+    return unsatisfied;
+  }
+
+  public boolean allSatisfied() {
+    return unsatisfied.isEmpty();
+  }
+
+  public boolean anySatisfied() {
+    return !satisfied.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "ExpectationsResult{" +
+        "satisfied=" + satisfied +
+        ", unsatisfied=" + unsatisfied +
+        '}';
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * An expectation waited for without blocking a thread.  It listens on its event log, and
+ * is matched on whichever thread records an event.  Timeouts are run by a scheduler which
+ * is shared by all expectations.
+ *
+ * @param <T> the type of the event payload.
+ */
+class FutureExpectation<T> implements Runnable {
+
+  private final String operation;
+  private final EventLog eventLog;
+  private final EventLog.Cursor cursor;
+  private final Function<T, Boolean> payloadMatcher;
+  private final EventRecorderStatistics statistics;
+  private final long startedAt;
+  private final CompletableFuture<T> future;
+
+  FutureExpectation(
+      final String operation,
+      final EventLog eventLog,
+      final Function<T, Boolean> payloadMatcher,
+      final EventRecorderStatistics statistics) {
+    this.startedAt = System.nanoTime();
+    this.statistics = statistics;
+    this.operation = operation;
+    this.eventLog = eventLog;
+    this.cursor = eventLog.cursor();
+    this.payloadMatcher = payloadMatcher;
+    this.future = new CompletableFuture<>();
+  }
+
+  CompletableFuture<T> start(final ScheduledExecutorService timeoutScheduler, final long timeout, final TimeUnit unit) {
+    eventLog.addListener(this);
+    final ScheduledFuture<?> scheduledTimeout = timeoutScheduler.schedule(() -> expire(timeout, unit), timeout, unit);
+    future.whenComplete((payload, throwable) -> {
+      eventLog.removeListener(this);
+      scheduledTimeout.cancel(false);
+    });
+    run();
+    return future;
+  }
+
+  @Override
+  public synchronized void run() {
+    if (future.isDone())
+      return;
+
+    try {
+      for (EventRecord event = cursor.next(); event != null; event = cursor.next()) {
+        if (event.matches(payloadMatcher) && cursor.claim(event)) {
+          //noinspection unchecked
+          if (future.complete((T) event.getPayloadObject()))
+            statistics.matched(startedAt);
+          return;
+        }
+      }
+    } catch (final RuntimeException ex) {
+      //A failing matcher fails this expectation, not the thread which records the event.
+      future.completeExceptionally(ex);
+    }
+  }
+
+  private synchronized void expire(final long timeout, final TimeUnit unit) {
+    if (future.completeExceptionally(new TimeoutException("Waited " + unit.toMillis(timeout) +
+        " milliseconds, and event " + operation + " with payload " + payloadMatcher + " wasn't observed")))
+      statistics.timedOut(1);
+  }
+}
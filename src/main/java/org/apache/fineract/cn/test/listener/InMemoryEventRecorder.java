@@ -19,15 +19,25 @@
 package org.apache.fineract.cn.test.listener;
 
 import com.google.gson.Gson;
-import java.util.Objects;
+import java.util.Optional;
 import org.apache.fineract.cn.lang.TenantContextHolder;
 import org.slf4j.Logger;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -36,103 +46,212 @@ import java.util.function.Function;
  */
 class InMemoryEventRecorder implements EventRecorder {
 
+  private static final ScheduledExecutorService TIMEOUT_SCHEDULER = createTimeoutScheduler();
+
   private final long maxWait;
-  private final BlockingDeque<EventRecord> blockingDeque;
+  private final EventRetention retention;
+  private final EventRecorderStatistics statistics;
+  private final ConcurrentMap<String, TenantEventLogs> tenantEventLogs;
   private final Gson gson;
   private final Logger logger;
 
   InMemoryEventRecorder(final long maxWait, final Gson gson, final Logger logger) {
+    this(maxWait, EventRetention.unbounded(), gson, logger);
+  }
+
+  InMemoryEventRecorder(final long maxWait, final EventRetention retention, final Gson gson, final Logger logger) {
     this.maxWait = maxWait;
-    this.blockingDeque = new LinkedBlockingDeque<>();
+    this.retention = retention;
+    this.statistics = new EventRecorderStatistics();
+    this.tenantEventLogs = new ConcurrentHashMap<>();
     this.gson = gson;
     this.logger = logger;
   }
 
   @Override
   public <T> boolean wait(final String operation, final T payloadMatcher) throws InterruptedException {
-    return waitForMatch(operation, new Function<T, Boolean>() {
-      @Override
-      public Boolean apply(Object x) {
-        return Objects.equals(x,payloadMatcher);
-      }
+    return waitForMatch(operation, Expectation.equalTo(payloadMatcher));
+  }
+
+  @Override
+  public <T> boolean waitForMatch(String operation, Function<T, Boolean> payloadMatcher) throws InterruptedException {
+    final long startTime = System.nanoTime();
+    final long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(maxWait);
+
+    final Optional<EventLog.Cursor> cursor = TenantContextHolder.identifier()
+        .map(tenant -> eventLog(tenant, operation).cursor());
+    if (cursor.isPresent()) {
+      while (true) {
+        if (cursor.get().claimNextMatch(payloadMatcher)) {
+          statistics.matched(startTime);
+          return true;
+        }
+
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+          break;
 
-      @Override
-      public String toString() {
-        return payloadMatcher.toString();
+        //Parks until an event for this tenant and operation is added; other events don't wake it.
+        cursor.get().awaitEvent(remaining, TimeUnit.NANOSECONDS);
       }
-    });
+    }
+
+    statistics.timedOut(1);
+    logger.info("Waited {} milliseconds, and event {} with payload {} wasn't observed",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), operation, payloadMatcher);
+    return false;
   }
 
   @Override
-  public <T> boolean waitForMatch(String operation, Function<T, Boolean> payloadMatcher) throws InterruptedException {
-    final long startTime = new Date().getTime();
-    long waitedSoFar = 0;
+  public ExpectationsResult waitForAll(final Collection<? extends Expectation<?>> expectations) throws InterruptedException {
+    return waitFor(expectations, expectations.size());
+  }
 
-    try (final Cleanup cleanup = new Cleanup()) {
-      boolean found = false;
-      while (!found) {
-        final EventRecord event = this.blockingDeque.poll(Math.max(0, maxWait - waitedSoFar), TimeUnit.MILLISECONDS);
+  @Override
+  public ExpectationsResult waitForAny(final Collection<? extends Expectation<?>> expectations) throws InterruptedException {
+    return waitFor(expectations, Math.min(1, expectations.size()));
+  }
+
+  /**
+   * Matches all the expectations in one pass over the events of their operations, and
+   * waits on a single signal for events in any of those operations.
+   */
+  private ExpectationsResult waitFor(
+      final Collection<? extends Expectation<?>> expectations,
+      final int requiredMatchCount) throws InterruptedException {
+    final long startTime = System.nanoTime();
+    final long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(maxWait);
+    final List<Expectation<?>> satisfied = new ArrayList<>();
+    final Map<String, List<Expectation<?>>> pendingByOperation = new LinkedHashMap<>();
+    expectations.forEach(expectation -> pendingByOperation
+        .computeIfAbsent(expectation.getOperation(), x -> new LinkedList<>())
+        .add(expectation));
+
+    final Optional<String> tenant = TenantContextHolder.identifier();
+    if (tenant.isPresent() && requiredMatchCount > 0) {
+      final Map<String, EventLog> eventLogs = new HashMap<>();
+      final Map<String, EventLog.Cursor> cursors = new HashMap<>();
+      pendingByOperation.keySet().forEach(operation -> {
+        final EventLog eventLog = eventLog(tenant.get(), operation);
+        eventLogs.put(operation, eventLog);
+        cursors.put(operation, eventLog.cursor());
+      });
 
-        final long now = new Date().getTime();
-        waitedSoFar = now - startTime;
+      final EventSignal signal = new EventSignal();
+      eventLogs.values().forEach(eventLog -> eventLog.addListener(signal));
+      try {
+        while (true) {
+          final long observedCount = signal.count();
+          final int satisfiedBefore = satisfied.size();
+          claimMatches(cursors, pendingByOperation, satisfied, requiredMatchCount);
+          for (int i = satisfiedBefore; i < satisfied.size(); i++) {
+            statistics.matched(startTime);
+          }
 
-        if (event != null) {
-          //noinspection unchecked
-          found = (TenantContextHolder.identifier().map(x -> x.equals(event.getTenant())).orElse(false) &&
-                  (event.getOperation().equals(operation)) &&
-                  payloadMatcher.apply((T)event.getPayloadObject()));
+          final long remaining = deadline - System.nanoTime();
+          if (satisfied.size() >= requiredMatchCount || remaining <= 0)
+            break;
 
-          if (!found)
-            cleanup.addStep(() -> blockingDeque.putLast(event));
+          signal.awaitAfter(observedCount, remaining, TimeUnit.NANOSECONDS);
         }
+      } finally {
+        eventLogs.values().forEach(eventLog -> eventLog.removeListener(signal));
+      }
+    }
 
-        if ((waitedSoFar > maxWait) && blockingDeque.isEmpty()) {
-          logger.info("Waited {} milliseconds, and event {} with payload {} wasn't observed",
-                  waitedSoFar, operation, payloadMatcher);
-          return false;
+    final List<Expectation<?>> unsatisfied = new ArrayList<>();
+    pendingByOperation.values().forEach(unsatisfied::addAll);
+    if (satisfied.size() < requiredMatchCount) {
+      statistics.timedOut(unsatisfied.size());
+      logger.info("Waited {} milliseconds, and {} of {} expected events weren't observed: {}",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), unsatisfied.size(), expectations.size(), unsatisfied);
+    }
+    return new ExpectationsResult(satisfied, unsatisfied);
+  }
+
+  private static void claimMatches(
+      final Map<String, EventLog.Cursor> cursors,
+      final Map<String, List<Expectation<?>>> pendingByOperation,
+      final List<Expectation<?>> satisfied,
+      final int requiredMatchCount) {
+    for (final Map.Entry<String, EventLog.Cursor> cursor : cursors.entrySet()) {
+      final List<Expectation<?>> pending = pendingByOperation.get(cursor.getKey());
+      EventRecord event;
+      while (!pending.isEmpty() && satisfied.size() < requiredMatchCount && (event = cursor.getValue().next()) != null) {
+        final Iterator<Expectation<?>> expectations = pending.iterator();
+        while (expectations.hasNext()) {
+          final Expectation<?> expectation = expectations.next();
+          if (expectation.matches(event)) {
+            if (cursor.getValue().claim(event)) {
+              expectations.remove();
+              satisfied.add(expectation);
+            }
+            break;
+          }
         }
       }
+    }
+  }
 
-      return true;
+  @Override
+  public <T> CompletableFuture<T> expect(final String operation, final Function<T, Boolean> payloadMatcher) {
+    final Optional<String> tenant = TenantContextHolder.identifier();
+    if (!tenant.isPresent()) {
+      final CompletableFuture<T> ret = new CompletableFuture<>();
+      ret.completeExceptionally(new IllegalStateException("No tenant is set, so event " + operation + " can't be expected."));
+      return ret;
     }
+
+    return new FutureExpectation<>(operation, eventLog(tenant.get(), operation), payloadMatcher, statistics)
+        .start(TIMEOUT_SCHEDULER, maxWait, TimeUnit.MILLISECONDS);
   }
 
   @Override
   public <T> void event(final String tenant, final String operation, final String payload, final Class<T> clazz) {
-    final T payloadObject = gson.fromJson(payload, clazz);
-    this.blockingDeque.add(new EventRecord(tenant, operation, payloadObject));
+    eventLog(tenant, operation).add(new EventRecord(tenant, operation, payload, clazz, gson, logger));
+    retention.enforce(tenantEventLogs.values());
   }
 
   public void clear() {
-    this.blockingDeque.clear();
+    tenantEventLogs.values().forEach(TenantEventLogs::clear);
   }
 
-  private interface Step {
-
-    void clean() throws InterruptedException;
+  @Override
+  public void clear(final String tenant) {
+    final TenantEventLogs eventLogs = tenantEventLogs.get(tenant);
+    if (eventLogs != null)
+      eventLogs.clear();
   }
 
-  private class Cleanup implements AutoCloseable {
-
-    private List<Step> steps = new LinkedList<>();
-
-    Cleanup() {
-      super();
-    }
+  @Override
+  public EvictionCounts getEvictionCounts() {
+    return retention.evictionCounts();
+  }
 
-    @Override
-    public void close() throws InterruptedException {
-      cleanup();
-    }
+  @Override
+  public EventRecorderMetrics getMetrics() {
+    final SortedMap<String, SortedMap<String, Long>> recordedEvents = new TreeMap<>();
+    tenantEventLogs.forEach((tenant, eventLogs) -> recordedEvents.put(tenant, eventLogs.recordedCounts()));
+    return new EventRecorderMetrics(
+        recordedEvents,
+        retention.eventCount(),
+        statistics.matchLatencyBucketCounts(),
+        statistics.timeouts(),
+        statistics.inspections(),
+        retention.evictionCounts());
+  }
 
-    void addStep(final Step newFirstStep) {
-      steps.add(0, newFirstStep);
-    }
+  private static ScheduledExecutorService createTimeoutScheduler() {
+    final ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(1, runnable -> {
+      final Thread thread = new Thread(runnable, "event-recorder-timeouts");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ret.setRemoveOnCancelPolicy(true);
+    return ret;
+  }
 
-    private void cleanup() throws InterruptedException {
-      for (final Step step : steps) {
-        step.clean();
-      }
-    }
+  private EventLog eventLog(final String tenant, final String operation) {
+    return tenantEventLogs.computeIfAbsent(tenant, x -> new TenantEventLogs(retention, statistics)).eventLog(operation);
   }
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.listener;
+
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The event logs of a single tenant, one per operation.  Tenants share nothing but the
+ * map they are looked up in, so test classes running in parallel, each with its own
+ * tenant, neither see nor wake each other's waiters.
+ *
+ * @author Myrle Krantz
+ */
+class TenantEventLogs {
+
+  private final EventRetention retention;
+  private final EventRecorderStatistics statistics;
+  private final ConcurrentMap<String, EventLog> eventLogs;
+
+  TenantEventLogs(final EventRetention retention, final EventRecorderStatistics statistics) {
+    this.retention = retention;
+    this.statistics = statistics;
+    this.eventLogs = new ConcurrentHashMap<>();
+  }
+
+  EventLog eventLog(final String operation) {
+    return eventLogs.computeIfAbsent(operation, x -> new EventLog(retention, statistics));
+  }
+
+  SortedMap<String, Long> recordedCounts() {
+    final SortedMap<String, Long> ret = new TreeMap<>();
+    eventLogs.forEach((operation, eventLog) -> ret.put(operation, eventLog.recordedCount()));
+    return ret;
+  }
+
+  Collection<EventLog> eventLogs() {
+    return eventLogs.values();
+  }
+
+  void clear() {
+    eventLogs.values().forEach(EventLog::clear);
+  }
+}
@@ -39,6 +39,31 @@ public class TestEnvironmentTest {
     }
   }
 
+  @Test
+  public void shouldKeepPublishedProperties() {
+    final String key = "test.published.port";
+    final TestEnvironment testEnvironment = new TestEnvironment("fineract-cn-core");
+    testEnvironment.setProperty(key, "5432");
+
+    TestEnvironment.publishProperty(key, "15432");
+    testEnvironment.populate();
+
+    Assert.assertEquals("15432", System.getProperty(key));
+  }
+
+  @Test
+  public void shouldKeepSetPropertiesWhenPopulatingAbsent() {
+    final String key = "test.configured.database";
+    final TestEnvironment testEnvironment = new TestEnvironment("fineract-cn-core");
+    testEnvironment.setProperty(key, "seshat");
+
+    System.setProperty(key, "meta");
+    testEnvironment.populateAbsent();
+
+    Assert.assertEquals("meta", System.getProperty(key));
+    Assert.assertNotNull(System.getProperty(TestEnvironment.SPRING_APPLICATION_NAME_PROPERTY));
+  }
+
   @Test
   public void shouldGenerateUniqueId() {
     final TestEnvironment testEnvironment = new TestEnvironment("fineract-cn-core");
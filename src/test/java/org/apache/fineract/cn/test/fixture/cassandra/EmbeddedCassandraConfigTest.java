@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.cassandra;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class EmbeddedCassandraConfigTest {
+
+  @Test
+  public void shouldRewriteOnlyTheGivenPortKey() {
+    final String yaml = "# native_transport_port: 9042\n" +
+        "native_transport_port: 9142\n" +
+        "native_transport_port_ssl: 9143\n" +
+        "rpc_port: 9171\n";
+
+    final String rewritten = EmbeddedCassandraConfig.setPort(yaml, "native_transport_port", 54321);
+
+    Assert.assertEquals("# native_transport_port: 9042\n" +
+        "native_transport_port: 54321\n" +
+        "native_transport_port_ssl: 9143\n" +
+        "rpc_port: 9171\n", rewritten);
+  }
+
+  @Test
+  public void shouldRewriteAllPortsOfFastProfile() throws IOException {
+    String yaml = readResource("cassandra-fast.yaml");
+    yaml = EmbeddedCassandraConfig.setPort(yaml, "native_transport_port", 50001);
+    yaml = EmbeddedCassandraConfig.setPort(yaml, "rpc_port", 50002);
+    yaml = EmbeddedCassandraConfig.setPort(yaml, "storage_port", 50003);
+    yaml = EmbeddedCassandraConfig.setPort(yaml, "ssl_storage_port", 50004);
+
+    Assert.assertTrue(yaml.contains("\nnative_transport_port: 50001\n"));
+    Assert.assertTrue(yaml.contains("\nrpc_port: 50002\n"));
+    Assert.assertTrue(yaml.contains("\nstorage_port: 50003\n"));
+    Assert.assertTrue(yaml.contains("\nssl_storage_port: 50004\n"));
+    Assert.assertFalse(yaml.contains("9142"));
+  }
+
+  private static String readResource(final String name) throws IOException {
+    try (final InputStream in = EmbeddedCassandraConfigTest.class.getResourceAsStream(name)) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.test.fixture.postgresql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PostgreSQLTenantTest {
+
+  @Test
+  public void shouldInsertOneRowOfParametersPerTenant() {
+    final String insertAllStatement = PostgreSQLTenant.insertAllStatement(3);
+
+    Assert.assertEquals(" INSERT INTO tenants (identifier, driver_class, database_name, host, port, a_user, pwd) " +
+            " values  (?, ?, ?, ?, ?, ?, ?), (?, ?, ?, ?, ?, ?, ?), (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (identifier) DO NOTHING ",
+        insertAllStatement);
+  }
+
+  @Test
+  public void shouldBindSevenParametersPerTenant() {
+    final String insertAllStatement = PostgreSQLTenant.insertAllStatement(1000);
+
+    Assert.assertEquals(7000, insertAllStatement.chars().filter(c -> c == '?').count());
+    Assert.assertTrue(insertAllStatement.endsWith(" ON CONFLICT (identifier) DO NOTHING "));
+  }
+}
@@ -24,13 +24,25 @@ import org.apache.fineract.cn.lang.TenantContextHolder;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Myrle Krantz
@@ -125,6 +137,58 @@ public class InMemoryEventRecorderTest {
     Assert.assertTrue(yum);
   }
 
+  @Test
+  public void shouldOnlyClearEventsOfGivenTenant() throws InterruptedException {
+    final String line = "sat on a wall";
+    final String lunch = "omelette";
+
+    generateEvent("x", line, lunch);
+    generateEvent("y", line, lunch);
+
+    eventRecorder.clear("y");
+
+    TenantContextHolder.setIdentifier("y");
+    final boolean foundForClearedTenant = eventRecorder.wait(line, new TestPayloadObject(lunch));
+    TenantContextHolder.setIdentifier("x");
+    final boolean foundForOtherTenant = eventRecorder.wait(line, new TestPayloadObject(lunch));
+    TenantContextHolder.clear();
+
+    Assert.assertFalse(foundForClearedTenant);
+    Assert.assertTrue(foundForOtherTenant);
+  }
+
+  @Test
+  public void shouldNotDeserializePayloadOfEventNobodyWaitsFor() throws InterruptedException {
+    final String tenant = "x";
+    final String line = "the king's men";
+    final String lunch = "poached";
+
+    eventRecorder.event(tenant, "nobody listens", "{this is not json", TestPayloadObject.class);
+    generateEvent(tenant, line, lunch);
+
+    TenantContextHolder.setIdentifier(tenant);
+    final boolean found = eventRecorder.wait(line, new TestPayloadObject(lunch));
+    TenantContextHolder.clear();
+    Assert.assertTrue(found);
+  }
+
+  @Test
+  public void shouldSkipEventWhosePayloadCannotBeDeserialized() throws InterruptedException {
+    final String tenant = "x";
+    final String line = "all the king's horses";
+    final String lunch = "scrambled";
+
+    eventRecorder.event(tenant, line, "{this is not json", TestPayloadObject.class);
+    generateEvent(tenant, line, lunch);
+
+    TenantContextHolder.setIdentifier(tenant);
+    final boolean found = eventRecorder.wait(line, new TestPayloadObject(lunch));
+    final boolean foundAgain = eventRecorder.wait(line, new TestPayloadObject(lunch));
+    TenantContextHolder.clear();
+    Assert.assertTrue(found);
+    Assert.assertFalse(foundAgain);
+  }
+
   @Test
   public void shouldFindEventWhenTwoAmongSeveral() throws InterruptedException {
     final String tenant = "x";
@@ -145,7 +209,326 @@ public class InMemoryEventRecorderTest {
     Assert.assertTrue(found);
   }
 
+  @Test
+  public void shouldFindEventRecordedWhileWaiting() throws InterruptedException {
+    final EventRecorder patientEventRecorder = new InMemoryEventRecorder(
+        TimeUnit.SECONDS.toMillis(10), new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final String tenant = "x";
+    final String line = "humpty dumpty sat on a wall";
+    final String lunch = "soft boiled";
+
+    for (int i = 0; i < 1000; i++) {
+      generateEvent(patientEventRecorder, tenant, "other line" + i, lunch);
+    }
+
+    final Thread eventThread = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (final InterruptedException ignored) {
+        return;
+      }
+      generateEvent(patientEventRecorder, tenant, line, lunch);
+    });
+    eventThread.start();
+
+    TenantContextHolder.setIdentifier(tenant);
+    final boolean found = patientEventRecorder.wait(line, new TestPayloadObject(lunch));
+    TenantContextHolder.clear();
+    eventThread.join();
+    Assert.assertTrue(found);
+  }
+
+  @Test
+  public void shouldLetConcurrentWaitersClaimDistinctEvents() throws Exception {
+    final String tenant = "x";
+    final String line = "humpty dumpty had a great fall";
+    final String lunch = "scrambled";
+    final int waiterCount = 8;
+
+    for (int i = 0; i < waiterCount; i++) {
+      generateEvent(tenant, line, lunch);
+    }
+
+    final ExecutorService executorService = Executors.newFixedThreadPool(waiterCount);
+    try {
+      final List<Future<Boolean>> founds = new ArrayList<>();
+      for (int i = 0; i < waiterCount; i++) {
+        founds.add(executorService.submit(() -> {
+          TenantContextHolder.setIdentifier(tenant);
+          try {
+            return eventRecorder.wait(line, new TestPayloadObject(lunch));
+          } finally {
+            TenantContextHolder.clear();
+          }
+        }));
+      }
+      for (final Future<Boolean> found : founds) {
+        Assert.assertTrue(found.get());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    TenantContextHolder.setIdentifier(tenant);
+    final boolean foundAgain = eventRecorder.wait(line, new TestPayloadObject(lunch));
+    TenantContextHolder.clear();
+    Assert.assertFalse(foundAgain);
+  }
+
+  @Test
+  public void shouldServeParallelTenantsWithoutCrossTalk() throws Exception {
+    final EventRecorder parallelEventRecorder = new InMemoryEventRecorder(
+        TimeUnit.SECONDS.toMillis(2), new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final int tenantCount = 8;
+    final int eventsPerTenant = 500;
+
+    //Warms up the recorder, so that the single tenant run is not slowed down by class loading and JIT compilation.
+    produceAndAwaitEvents(parallelEventRecorder, "warmUp", 1, eventsPerTenant);
+    final long singleTenantMillis = produceAndAwaitEvents(parallelEventRecorder, "single", 1, eventsPerTenant);
+    final long parallelTenantsMillis = produceAndAwaitEvents(parallelEventRecorder, "parallel", tenantCount, eventsPerTenant);
+    LoggerFactory.getLogger(InMemoryEventRecorderTest.class).info(
+        "{} events for one tenant took {} ms, {} events each for {} parallel tenants took {} ms.",
+        eventsPerTenant, singleTenantMillis, eventsPerTenant, tenantCount, parallelTenantsMillis);
+    //Even without a spare core per tenant, parallel tenants must not take longer than running them one after another.
+    Assert.assertTrue("Parallel tenants took " + parallelTenantsMillis + " ms, one tenant took " + singleTenantMillis + " ms.",
+        parallelTenantsMillis <= tenantCount * Math.max(singleTenantMillis, 10L));
+
+    final ExecutorService executorService = Executors.newFixedThreadPool(tenantCount);
+    try {
+      final List<Future<ExpectationsResult>> crossTenantResults = new ArrayList<>();
+      for (int i = 0; i < tenantCount; i++) {
+        final String tenant = tenantName("parallel", i);
+        final String otherTenant = tenantName("parallel", (i + 1) % tenantCount);
+        crossTenantResults.add(executorService.submit(() -> {
+          final List<Expectation<TestPayloadObject>> otherTenantsEvents = new ArrayList<>();
+          for (int j = 0; j < eventsPerTenant; j++) {
+            otherTenantsEvents.add(Expectation.of("tickle" + (j % 10), new TestPayloadObject(payloadParameter(otherTenant, j))));
+          }
+          TenantContextHolder.setIdentifier(tenant);
+          try {
+            return parallelEventRecorder.waitForAny(otherTenantsEvents);
+          } finally {
+            TenantContextHolder.clear();
+          }
+        }));
+      }
+      for (final Future<ExpectationsResult> crossTenantResult : crossTenantResults) {
+        Assert.assertEquals(Collections.emptyList(), crossTenantResult.get().getSatisfied());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldEvictOldestEventsBeyondMaxEvents() throws InterruptedException {
+    final EventRecorder boundedEventRecorder = new InMemoryEventRecorder(1L,
+        new EventRetention(10, 0, 0, EvictionPolicy.FIFO),
+        new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final String tenant = "x";
+    for (int i = 0; i < 20; i++) {
+      generateEvent(boundedEventRecorder, tenant, "tickle" + (i % 2), "funnyBone" + i);
+    }
+
+    TenantContextHolder.setIdentifier(tenant);
+    final boolean foundEvicted = boundedEventRecorder.wait("tickle1", new TestPayloadObject("funnyBone9"));
+    final boolean foundRetained = boundedEventRecorder.wait("tickle0", new TestPayloadObject("funnyBone10"));
+    TenantContextHolder.clear();
+
+    Assert.assertFalse(foundEvicted);
+    Assert.assertTrue(foundRetained);
+    Assert.assertEquals(10, boundedEventRecorder.getEvictionCounts().getEvictedForCount());
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedOperationFirst() throws InterruptedException {
+    final EventRecorder boundedEventRecorder = new InMemoryEventRecorder(1L,
+        new EventRetention(2, 0, 0, EvictionPolicy.LRU_PER_OPERATION),
+        new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final String tenant = "x";
+    generateEvent(boundedEventRecorder, tenant, "wall", "first");
+    generateEvent(boundedEventRecorder, tenant, "fall", "second");
+
+    TenantContextHolder.setIdentifier(tenant);
+    Assert.assertFalse(boundedEventRecorder.wait("wall", new TestPayloadObject("nothing")));
+    generateEvent(boundedEventRecorder, tenant, "wall", "third");
+
+    final boolean foundInUsedOperation = boundedEventRecorder.wait("wall", new TestPayloadObject("first"));
+    final boolean foundInUnusedOperation = boundedEventRecorder.wait("fall", new TestPayloadObject("second"));
+    TenantContextHolder.clear();
+
+    Assert.assertTrue(foundInUsedOperation);
+    Assert.assertFalse(foundInUnusedOperation);
+    Assert.assertEquals(1, boundedEventRecorder.getEvictionCounts().getTotal());
+  }
+
+  @Test
+  public void shouldReportWhichExpectationsWereSatisfied() throws InterruptedException {
+    final String tenant = "x";
+    final List<Expectation<TestPayloadObject>> expectations = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expectations.add(Expectation.of("tickle" + (i % 3), new TestPayloadObject("funnyBone" + i)));
+      if (i != 42)
+        generateEvent(tenant, "tickle" + (i % 3), "funnyBone" + i);
+    }
+
+    TenantContextHolder.setIdentifier(tenant);
+    final ExpectationsResult result = eventRecorder.waitForAll(expectations);
+    TenantContextHolder.clear();
+
+    Assert.assertFalse(result.allSatisfied());
+    Assert.assertEquals(99, result.getSatisfied().size());
+    Assert.assertEquals(Collections.singletonList(expectations.get(42)), result.getUnsatisfied());
+  }
+
+  @Test
+  public void shouldStopWaitingForAnyAfterFirstMatch() throws InterruptedException {
+    final String tenant = "x";
+    final List<Expectation<TestPayloadObject>> expectations = Arrays.asList(
+        Expectation.of("nursery", new TestPayloadObject("rhyme")),
+        Expectation.of("nursery", new TestPayloadObject("song")));
+    generateEvent(tenant, "nursery", "song");
+
+    TenantContextHolder.setIdentifier(tenant);
+    final ExpectationsResult result = eventRecorder.waitForAny(expectations);
+    TenantContextHolder.clear();
+
+    Assert.assertTrue(result.anySatisfied());
+    Assert.assertEquals(Collections.singletonList(expectations.get(1)), result.getSatisfied());
+  }
+
+  @Test
+  public void shouldCompleteExpectationOnRecordingThread() throws Exception {
+    final EventRecorder patientEventRecorder = new InMemoryEventRecorder(
+        TimeUnit.SECONDS.toMillis(10), new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final String tenant = "x";
+    final String line = "humpty dumpty";
+
+    TenantContextHolder.setIdentifier(tenant);
+    final List<CompletableFuture<TestPayloadObject>> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final TestPayloadObject payload = new TestPayloadObject("egg" + i);
+      expected.add(patientEventRecorder.expect(line, payload::equals));
+    }
+    TenantContextHolder.clear();
+
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertFalse(expected.get(i).isDone());
+      generateEvent(patientEventRecorder, tenant, line, "egg" + i);
+      Assert.assertEquals(new TestPayloadObject("egg" + i), expected.get(i).getNow(null));
+    }
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void shouldTimeOutExpectationWhichIsNotMet() throws Throwable {
+    TenantContextHolder.setIdentifier("x");
+    final CompletableFuture<TestPayloadObject> expected = eventRecorder.expect("nursery rhyme", x -> true);
+    TenantContextHolder.clear();
+
+    try {
+      expected.get(10, TimeUnit.SECONDS);
+    } catch (final ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Test
+  public void shouldReportMetrics() throws InterruptedException {
+    final EventRecorder measuredEventRecorder = new InMemoryEventRecorder(1L,
+        new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final String tenant = "x";
+    generateEvent(measuredEventRecorder, tenant, "jack", "hill");
+    generateEvent(measuredEventRecorder, tenant, "jack", "pail");
+    generateEvent(measuredEventRecorder, tenant, "jill", "water");
+
+    TenantContextHolder.setIdentifier(tenant);
+    Assert.assertTrue(measuredEventRecorder.wait("jack", new TestPayloadObject("pail")));
+    Assert.assertFalse(measuredEventRecorder.wait("jill", new TestPayloadObject("crown")));
+    TenantContextHolder.clear();
+
+    final EventRecorderMetrics metrics = measuredEventRecorder.getMetrics();
+    Assert.assertEquals(2, metrics.getRecordedEventCount(tenant, "jack"));
+    Assert.assertEquals(1, metrics.getRecordedEventCount(tenant, "jill"));
+    Assert.assertEquals(3, metrics.getBacklogDepth());
+    Assert.assertEquals(1, metrics.getMatchCount());
+    Assert.assertEquals(1, metrics.getTimeoutCount());
+    Assert.assertEquals(3, metrics.getInspectedEventCount());
+    Assert.assertNotNull(metrics.toString());
+  }
+
+  @Test
+  public void shouldNotRetainClaimedEvents() throws InterruptedException {
+    final EventRecorder measuredEventRecorder = new InMemoryEventRecorder(1L,
+        new GsonBuilder().create(), LoggerFactory.getLogger("event-recorder-logger"));
+    final String tenant = "x";
+    generateEvent(measuredEventRecorder, tenant, "jack", "hill");
+    generateEvent(measuredEventRecorder, tenant, "jack", "pail");
+    generateEvent(measuredEventRecorder, tenant, "jack", "crown");
+
+    TenantContextHolder.setIdentifier(tenant);
+    Assert.assertTrue(measuredEventRecorder.wait("jack", new TestPayloadObject("pail")));
+    Assert.assertEquals(3, measuredEventRecorder.getMetrics().getBacklogDepth());
+    Assert.assertTrue(measuredEventRecorder.wait("jack", new TestPayloadObject("hill")));
+    TenantContextHolder.clear();
+
+    Assert.assertEquals(1, measuredEventRecorder.getMetrics().getBacklogDepth());
+  }
+
+  private long produceAndAwaitEvents(
+      final EventRecorder eventRecorder,
+      final String tenantPrefix,
+      final int tenantCount,
+      final int eventsPerTenant) throws Exception {
+    final ExecutorService executorService = Executors.newFixedThreadPool(2 * tenantCount);
+    try {
+      final long start = System.nanoTime();
+      final List<Future<Boolean>> founds = new ArrayList<>();
+      for (int i = 0; i < tenantCount; i++) {
+        final String tenant = tenantName(tenantPrefix, i);
+        executorService.submit(() -> {
+          for (int j = 0; j < eventsPerTenant; j++) {
+            generateEvent(eventRecorder, tenant, "tickle" + (j % 10), payloadParameter(tenant, j));
+          }
+        });
+        founds.add(executorService.submit(() -> {
+          TenantContextHolder.setIdentifier(tenant);
+          try {
+            boolean foundAll = true;
+            for (int j = 0; j < eventsPerTenant; j++) {
+              foundAll &= eventRecorder.wait("tickle" + (j % 10), new TestPayloadObject(payloadParameter(tenant, j)));
+            }
+            return foundAll;
+          } finally {
+            TenantContextHolder.clear();
+          }
+        }));
+      }
+      for (final Future<Boolean> found : founds) {
+        Assert.assertTrue(found.get());
+      }
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  private static String tenantName(final String tenantPrefix, final int index) {
+    return tenantPrefix + "-" + index;
+  }
+
+  private static String payloadParameter(final String tenant, final int index) {
+    return "funnyBone-" + tenant + "-" + index;
+  }
+
+  private void generateEvent(
+      final String tenant,
+      final String operation,
+      final String payloadParameter) {
+    generateEvent(eventRecorder, tenant, operation, payloadParameter);
+  }
+
   private void generateEvent(
+      final EventRecorder eventRecorder,
       final String tenant,
       final String operation,
       final String payloadParameter) {